@@ -8,9 +8,11 @@ import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
 import org.thingsboard.server.common.data.kv.BooleanDataEntry;
 import org.thingsboard.server.common.data.kv.DataType;
 import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
 import org.thingsboard.server.common.data.kv.LongDataEntry;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.ModelConstants;
 
 import javax.annotation.Nullable;
 import java.util.List;
@@ -52,7 +54,7 @@ public class AggregatePartitionsFunction implements com.google.common.base.Funct
             AggregationResult aggResult = new AggregationResult();
 
             for (ResultSet rs : rsList) {
-                for (Row row : rs.all()) {
+                for (Row row : rs) {
                     processResultSetRow(row, aggResult);
                 }
             }
@@ -64,128 +66,201 @@ public class AggregatePartitionsFunction implements com.google.common.base.Funct
     }
 
     private void processResultSetRow(Row row, AggregationResult aggResult) {
-        long curCount = 0L;
-
-        Long curLValue = null;
-        Double curDValue = null;
-        Boolean curBValue = null;
-        String curSValue = null;
-
         long longCount = row.getLong(LONG_CNT_POS);
         long doubleCount = row.getLong(DOUBLE_CNT_POS);
-        long boolCount = row.getLong(BOOL_CNT_POS);
-        long strCount = row.getLong(STR_CNT_POS);
-
         if (longCount > 0 || doubleCount > 0) {
-            if (longCount > 0) {
-                aggResult.dataType = DataType.LONG;
-                curCount += longCount;
-                curLValue = getLongValue(row);
-            }
-            if (doubleCount > 0) {
-                aggResult.hasDouble = true;
-                aggResult.dataType = DataType.DOUBLE;
-                curCount += doubleCount;
-                curDValue = getDoubleValue(row);
-            }
-        } else if (boolCount > 0) {
-            aggResult.dataType = DataType.BOOLEAN;
-            curCount = boolCount;
-            curBValue = getBooleanValue(row);
-        } else if (strCount > 0) {
-            aggResult.dataType = DataType.STRING;
-            curCount = strCount;
-            curSValue = getStringValue(row);
-        } else {
+            boolean needsValue = aggregation != Aggregation.COUNT;
+            processNumeric(aggResult,
+                    longCount, longCount > 0 && needsValue ? row.getLong(LONG_POS) : 0L,
+                    doubleCount, doubleCount > 0 && needsValue ? row.getDouble(DOUBLE_POS) : 0.0);
             return;
         }
-
-        if (aggregation == Aggregation.COUNT) {
-            aggResult.count += curCount;
-        } else if (aggregation == Aggregation.AVG || aggregation == Aggregation.SUM) {
-            processAvgOrSumAggregation(aggResult, curCount, curLValue, curDValue);
-        } else if (aggregation == Aggregation.MIN) {
-            processMinAggregation(aggResult, curLValue, curDValue, curBValue, curSValue);
-        } else if (aggregation == Aggregation.MAX) {
-            processMaxAggregation(aggResult, curLValue, curDValue, curBValue, curSValue);
+        boolean needsValue = aggregation == Aggregation.MIN || aggregation == Aggregation.MAX;
+        long boolCount = row.getLong(BOOL_CNT_POS);
+        if (boolCount > 0) {
+            processBoolean(aggResult, boolCount, needsValue && row.getBool(BOOL_POS));
+            return;
+        }
+        long strCount = row.getLong(STR_CNT_POS);
+        if (strCount > 0) {
+            processString(aggResult, strCount, needsValue ? row.getString(STR_POS) : null);
         }
     }
 
-    private void processAvgOrSumAggregation(AggregationResult aggResult, long curCount, Long curLValue, Double curDValue) {
-        aggResult.count += curCount;
-        if (curDValue != null) {
-            aggResult.dValue = aggResult.dValue == null ? curDValue : aggResult.dValue + curDValue;
-        }
-        if (curLValue != null) {
-            aggResult.lValue = aggResult.lValue == null ? curLValue : aggResult.lValue + curLValue;
+    /**
+     * Folds a single raw <code>{@link ModelConstants#TS_KV_CF}</code> row (as returned by the
+     * {@link Aggregation#NONE} fetch statement) into the given result.
+     */
+    void processRawRow(Row row, TsKvRowDecoder decoder, AggregationResult aggResult) {
+        boolean hasLong = decoder.hasLong(row);
+        boolean hasDouble = decoder.hasDouble(row);
+        if (hasLong || hasDouble) {
+            processNumeric(aggResult,
+                    hasLong ? 1 : 0, hasLong ? decoder.getLong(row) : 0L,
+                    hasDouble ? 1 : 0, hasDouble ? decoder.getDouble(row) : 0.0);
+        } else if (decoder.hasBoolean(row)) {
+            processBoolean(aggResult, 1, decoder.getBoolean(row));
+        } else if (decoder.hasString(row)) {
+            processString(aggResult, 1, decoder.getString(row));
         }
     }
 
-    private void processMinAggregation(AggregationResult aggResult, Long curLValue, Double curDValue, Boolean curBValue, String curSValue) {
-        if (curDValue != null || curLValue != null) {
-            if (curDValue != null) {
-                aggResult.dValue = aggResult.dValue == null ? curDValue : Math.min(aggResult.dValue, curDValue);
-            }
-            if (curLValue != null) {
-                aggResult.lValue = aggResult.lValue == null ? curLValue : Math.min(aggResult.lValue, curLValue);
-            }
-        } else if (curBValue != null) {
-            aggResult.bValue = aggResult.bValue == null ? curBValue : aggResult.bValue && curBValue;
-        } else if (curSValue != null && (aggResult.sValue == null || curSValue.compareTo(aggResult.sValue) < 0)) {
-            aggResult.sValue = curSValue;
+    /**
+     * Folds a single decoded entry, such as a point of a compacted block, into the given result.
+     */
+    void processEntry(KvEntry entry, AggregationResult aggResult) {
+        switch (entry.getDataType()) {
+            case LONG:
+                processNumeric(aggResult, 1, entry.getLongValue().orElse(0L), 0, 0.0);
+                break;
+            case DOUBLE:
+                processNumeric(aggResult, 0, 0L, 1, entry.getDoubleValue().orElse(0.0));
+                break;
+            case BOOLEAN:
+                processBoolean(aggResult, 1, entry.getBooleanValue().orElse(false));
+                break;
+            case STRING:
+                processString(aggResult, 1, entry.getStrValue().orElse(null));
+                break;
+            default:
+                break;
         }
     }
 
-    private void processMaxAggregation(AggregationResult aggResult, Long curLValue, Double curDValue, Boolean curBValue, String curSValue) {
-        if (curDValue != null || curLValue != null) {
-            if (curDValue != null) {
-                aggResult.dValue = aggResult.dValue == null ? curDValue : Math.max(aggResult.dValue, curDValue);
-            }
-            if (curLValue != null) {
-                aggResult.lValue = aggResult.lValue == null ? curLValue : Math.max(aggResult.lValue, curLValue);
+    /**
+     * Folds a single <code>{@link TsKvRollup#TS_KV_ROLLUP_CF}</code> partial into the given result.
+     */
+    void processRollupRow(Row row, AggregationResult aggResult) {
+        long longCount = row.getLong(TsKvRollup.LONG_COUNT_COLUMN);
+        long doubleCount = row.getLong(TsKvRollup.DOUBLE_COUNT_COLUMN);
+        if (longCount > 0 || doubleCount > 0) {
+            String longColumn;
+            String doubleColumn;
+            if (aggregation == Aggregation.MIN) {
+                longColumn = TsKvRollup.LONG_MIN_COLUMN;
+                doubleColumn = TsKvRollup.DOUBLE_MIN_COLUMN;
+            } else if (aggregation == Aggregation.MAX) {
+                longColumn = TsKvRollup.LONG_MAX_COLUMN;
+                doubleColumn = TsKvRollup.DOUBLE_MAX_COLUMN;
+            } else {
+                longColumn = TsKvRollup.LONG_SUM_COLUMN;
+                doubleColumn = TsKvRollup.DOUBLE_SUM_COLUMN;
             }
-        } else if (curBValue != null) {
-            aggResult.bValue = aggResult.bValue == null ? curBValue : aggResult.bValue || curBValue;
-        } else if (curSValue != null && (aggResult.sValue == null || curSValue.compareTo(aggResult.sValue) > 0)) {
-            aggResult.sValue = curSValue;
+            processNumeric(aggResult,
+                    longCount, longCount > 0 ? row.getLong(longColumn) : 0L,
+                    doubleCount, doubleCount > 0 ? row.getDouble(doubleColumn) : 0.0);
+            return;
         }
-    }
-
-    private Boolean getBooleanValue(Row row) {
-        if (aggregation == Aggregation.MIN || aggregation == Aggregation.MAX) {
-            return row.getBool(BOOL_POS);
-        } else {
-            return null; //NOSONAR, null is used for further comparison
+        boolean min = aggregation == Aggregation.MIN;
+        long boolCount = row.getLong(TsKvRollup.BOOL_COUNT_COLUMN);
+        if (boolCount > 0) {
+            processBoolean(aggResult, boolCount, row.getBool(min ? TsKvRollup.BOOL_MIN_COLUMN : TsKvRollup.BOOL_MAX_COLUMN));
+            return;
+        }
+        long strCount = row.getLong(TsKvRollup.STR_COUNT_COLUMN);
+        if (strCount > 0) {
+            processString(aggResult, strCount, row.getString(min ? TsKvRollup.STR_MIN_COLUMN : TsKvRollup.STR_MAX_COLUMN));
         }
     }
 
-    private String getStringValue(Row row) {
-        if (aggregation == Aggregation.MIN || aggregation == Aggregation.MAX) {
-            return row.getString(STR_POS);
-        } else {
-            return null;
+    /**
+     * @param lValue sum, min or max of the long values depending on the aggregation, ignored if longCount is 0
+     * @param dValue sum, min or max of the double values depending on the aggregation, ignored if doubleCount is 0
+     */
+    private void processNumeric(AggregationResult aggResult, long longCount, long lValue, long doubleCount, double dValue) {
+        if (longCount > 0) {
+            aggResult.dataType = DataType.LONG;
+        }
+        if (doubleCount > 0) {
+            aggResult.hasDouble = true;
+            aggResult.dataType = DataType.DOUBLE;
+        }
+        switch (aggregation) {
+            case COUNT:
+                aggResult.count += longCount + doubleCount;
+                break;
+            case AVG:
+            case SUM:
+                aggResult.count += longCount + doubleCount;
+                if (longCount > 0) {
+                    aggResult.lValue += lValue;
+                    aggResult.hasLValue = true;
+                }
+                if (doubleCount > 0) {
+                    aggResult.dValue += dValue;
+                    aggResult.hasDValue = true;
+                }
+                break;
+            case MIN:
+                if (longCount > 0) {
+                    aggResult.lValue = aggResult.hasLValue ? Math.min(aggResult.lValue, lValue) : lValue;
+                    aggResult.hasLValue = true;
+                }
+                if (doubleCount > 0) {
+                    aggResult.dValue = aggResult.hasDValue ? Math.min(aggResult.dValue, dValue) : dValue;
+                    aggResult.hasDValue = true;
+                }
+                break;
+            case MAX:
+                if (longCount > 0) {
+                    aggResult.lValue = aggResult.hasLValue ? Math.max(aggResult.lValue, lValue) : lValue;
+                    aggResult.hasLValue = true;
+                }
+                if (doubleCount > 0) {
+                    aggResult.dValue = aggResult.hasDValue ? Math.max(aggResult.dValue, dValue) : dValue;
+                    aggResult.hasDValue = true;
+                }
+                break;
+            default:
+                break;
         }
     }
 
-    private Long getLongValue(Row row) {
-        if (aggregation == Aggregation.MIN || aggregation == Aggregation.MAX
-                || aggregation == Aggregation.SUM || aggregation == Aggregation.AVG) {
-            return row.getLong(LONG_POS);
-        } else {
-            return null;
+    private void processBoolean(AggregationResult aggResult, long boolCount, boolean bValue) {
+        aggResult.dataType = DataType.BOOLEAN;
+        switch (aggregation) {
+            case COUNT:
+            case AVG:
+            case SUM:
+                aggResult.count += boolCount;
+                break;
+            case MIN:
+                aggResult.bValue = aggResult.hasBValue ? aggResult.bValue && bValue : bValue;
+                aggResult.hasBValue = true;
+                break;
+            case MAX:
+                aggResult.bValue = aggResult.hasBValue ? aggResult.bValue || bValue : bValue;
+                aggResult.hasBValue = true;
+                break;
+            default:
+                break;
         }
     }
 
-    private Double getDoubleValue(Row row) {
-        if (aggregation == Aggregation.MIN || aggregation == Aggregation.MAX
-                || aggregation == Aggregation.SUM || aggregation == Aggregation.AVG) {
-            return row.getDouble(DOUBLE_POS);
-        } else {
-            return null;
+    private void processString(AggregationResult aggResult, long strCount, String sValue) {
+        aggResult.dataType = DataType.STRING;
+        switch (aggregation) {
+            case COUNT:
+            case AVG:
+            case SUM:
+                aggResult.count += strCount;
+                break;
+            case MIN:
+                if (sValue != null && (aggResult.sValue == null || sValue.compareTo(aggResult.sValue) < 0)) {
+                    aggResult.sValue = sValue;
+                }
+                break;
+            case MAX:
+                if (sValue != null && (aggResult.sValue == null || sValue.compareTo(aggResult.sValue) > 0)) {
+                    aggResult.sValue = sValue;
+                }
+                break;
+            default:
+                break;
         }
     }
 
-    private Optional<TsKvEntry> processAggregationResult(AggregationResult aggResult) {
+    Optional<TsKvEntry> processAggregationResult(AggregationResult aggResult) {
         Optional<TsKvEntry> result;
         if (aggResult.dataType == null) {
             result = Optional.empty();
@@ -205,11 +280,11 @@ public class AggregatePartitionsFunction implements com.google.common.base.Funct
     }
 
     private Optional<TsKvEntry> processAvgOrSumResult(AggregationResult aggResult) {
-        if (aggResult.count == 0 || (aggResult.dataType == DataType.DOUBLE && aggResult.dValue == null) || (aggResult.dataType == DataType.LONG && aggResult.lValue == null)) {
+        if (aggResult.count == 0 || (aggResult.dataType == DataType.DOUBLE && !aggResult.hasDValue) || (aggResult.dataType == DataType.LONG && !aggResult.hasLValue)) {
             return Optional.empty();
         } else if (aggResult.dataType == DataType.DOUBLE || aggResult.dataType == DataType.LONG) {
             if(aggregation == Aggregation.AVG || aggResult.hasDouble) {
-                double sum = Optional.ofNullable(aggResult.dValue).orElse(0.0d) + Optional.ofNullable(aggResult.lValue).orElse(0L);
+                double sum = aggResult.dValue + aggResult.lValue;
                 return Optional.of(new BasicTsKvEntry(ts, new DoubleDataEntry(key, aggregation == Aggregation.SUM ? sum : (sum / aggResult.count))));
             } else {
                 return Optional.of(new BasicTsKvEntry(ts, new LongDataEntry(key, aggregation == Aggregation.SUM ? aggResult.lValue : (aggResult.lValue / aggResult.count))));
@@ -221,8 +296,8 @@ public class AggregatePartitionsFunction implements com.google.common.base.Funct
     private Optional<TsKvEntry> processMinOrMaxResult(AggregationResult aggResult) {
         if (aggResult.dataType == DataType.DOUBLE || aggResult.dataType == DataType.LONG) {
             if(aggResult.hasDouble) {
-                double currentD = aggregation == Aggregation.MIN ? Optional.ofNullable(aggResult.dValue).orElse(Double.MAX_VALUE) : Optional.ofNullable(aggResult.dValue).orElse(Double.MIN_VALUE);
-                double currentL = aggregation == Aggregation.MIN ? Optional.ofNullable(aggResult.lValue).orElse(Long.MAX_VALUE) : Optional.ofNullable(aggResult.lValue).orElse(Long.MIN_VALUE);
+                double currentD = aggResult.hasDValue ? aggResult.dValue : (aggregation == Aggregation.MIN ? Double.MAX_VALUE : Double.MIN_VALUE);
+                double currentL = aggResult.hasLValue ? aggResult.lValue : (aggregation == Aggregation.MIN ? Long.MAX_VALUE : Long.MIN_VALUE);
                 return Optional.of(new BasicTsKvEntry(ts, new DoubleDataEntry(key, aggregation == Aggregation.MIN ? Math.min(currentD, currentL) : Math.max(currentD, currentL))));
             } else {
                 return Optional.of(new BasicTsKvEntry(ts, new LongDataEntry(key, aggResult.lValue)));
@@ -234,12 +309,18 @@ public class AggregatePartitionsFunction implements com.google.common.base.Funct
         }
     }
 
-    private class AggregationResult {
+    /**
+     * Primitive accumulator, values are only boxed when the resulting entry is built.
+     */
+    static class AggregationResult {
         DataType dataType = null;
-        Boolean bValue = null;
+        boolean bValue;
+        boolean hasBValue;
         String sValue = null;
-        Double dValue = null;
-        Long lValue = null;
+        double dValue;
+        boolean hasDValue;
+        long lValue;
+        boolean hasLValue;
         long count = 0;
         boolean hasDouble = false;
     }
@@ -3,6 +3,7 @@ package org.thingsboard.server.dao.timeseries;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,7 +24,12 @@ import org.thingsboard.server.dao.service.Validator;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
@@ -41,6 +47,9 @@ public class BaseTimeseriesService implements TimeseriesService {
     @Value("${database.ts_max_intervals}")
     private long maxTsIntervals;
 
+    @Value("${database.ts_max_downsampling_points:10000}")
+    private int maxDownsamplingPoints;
+
     @Autowired
     private TimeseriesDao timeseriesDao;
 
@@ -62,6 +71,51 @@ public class BaseTimeseriesService implements TimeseriesService {
         return timeseriesDao.findAllAsync(tenantId, entityId, queries);
     }
 
+    @Override
+    public TsKvStream stream(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        validate(entityId);
+        validate(query);
+        if (!Aggregation.NONE.equals(query.getAggregation())) {
+            throw new IncorrectParameterException("Incorrect ReadTsKvQuery. Streaming is not supported for aggregated queries");
+        }
+        return readForEntityView(tenantId, entityId, query, () -> TsKvStream.of(Futures.immediateFuture(new ArrayList<>())),
+                (targetId, targetQuery) -> timeseriesDao.stream(tenantId, targetId, targetQuery));
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllSketchAggregated(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsSketchAggregation aggregation, double quantile) {
+        validate(entityId);
+        validate(query);
+        if (aggregation == null) {
+            throw new IncorrectParameterException("Sketch aggregation can't be empty");
+        } else if (aggregation == TsSketchAggregation.PERCENTILE && (quantile < 0 || quantile > 1)) {
+            throw new IncorrectParameterException("Incorrect quantile " + quantile + ". Quantile should be between 0 and 1");
+        }
+        long step = Math.max(query.getInterval(), 1000);
+        long intervalCounts = (query.getEndTs() - query.getStartTs()) / step;
+        if (intervalCounts > maxTsIntervals || intervalCounts < 0) {
+            throw new IncorrectParameterException("Incorrect TsKvQuery. Number of intervals is to high - " + intervalCounts + ". " +
+                    "Please increase 'interval' parameter for your query or reduce the time range of the query.");
+        }
+        return readForEntityView(tenantId, entityId, query, () -> Futures.immediateFuture(new ArrayList<>()),
+                (targetId, targetQuery) -> timeseriesDao.findAllSketchAggregated(tenantId, targetId, targetQuery, aggregation, quantile));
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllDownsampled(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsDownsamplingMode mode, int points) {
+        validate(entityId);
+        validate(query);
+        if (mode == null) {
+            throw new IncorrectParameterException("Downsampling mode can't be empty");
+        } else if (points < 3) {
+            throw new IncorrectParameterException("Incorrect number of points " + points + ". At least 3 points are required for downsampling");
+        } else if (points > maxDownsamplingPoints) {
+            throw new IncorrectParameterException("Incorrect number of points " + points + ". At most " + maxDownsamplingPoints + " points are allowed for downsampling");
+        }
+        return readForEntityView(tenantId, entityId, query, () -> Futures.immediateFuture(new ArrayList<>()),
+                (targetId, targetQuery) -> timeseriesDao.findAllDownsampled(tenantId, targetId, targetQuery, mode, points));
+    }
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findLatest(TenantId tenantId, EntityId entityId, Collection<String> keys) {
         validate(entityId);
@@ -92,6 +146,30 @@ public class BaseTimeseriesService implements TimeseriesService {
         return Futures.allAsList(futures);
     }
 
+    @Override
+    public ListenableFuture<Map<EntityId, List<TsKvEntry>>> findLatest(TenantId tenantId, Collection<EntityId> entityIds, Collection<String> keys) {
+        entityIds.forEach(this::validate);
+        keys.forEach(key -> Validator.validateString(key, "Incorrect key " + key));
+        List<EntityId> entityViewIds = new ArrayList<>();
+        List<EntityId> otherIds = new ArrayList<>();
+        entityIds.forEach(entityId -> (entityId.getEntityType().equals(EntityType.ENTITY_VIEW) ? entityViewIds : otherIds).add(entityId));
+        ListenableFuture<Map<EntityId, List<TsKvEntry>>> future = otherIds.isEmpty() ?
+                Futures.immediateFuture(new LinkedHashMap<>()) : timeseriesDao.findLatest(tenantId, otherIds, keys);
+        if (entityViewIds.isEmpty()) {
+            return future;
+        }
+        List<ListenableFuture<List<TsKvEntry>>> entityViewFutures = entityViewIds.stream()
+                .map(entityViewId -> findLatest(tenantId, entityViewId, keys))
+                .collect(Collectors.toList());
+        return Futures.transformAsync(future, latest -> Futures.transform(Futures.allAsList(entityViewFutures), entityViewResults -> {
+            Map<EntityId, List<TsKvEntry>> result = new LinkedHashMap<>(latest);
+            for (int i = 0; i < entityViewIds.size(); i++) {
+                result.put(entityViewIds.get(i), entityViewResults.get(i));
+            }
+            return result;
+        }, MoreExecutors.directExecutor()), MoreExecutors.directExecutor());
+    }
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findAllLatest(TenantId tenantId, EntityId entityId) {
         validate(entityId);
@@ -122,22 +200,32 @@ public class BaseTimeseriesService implements TimeseriesService {
     @Override
     public ListenableFuture<List<Void>> save(TenantId tenantId, EntityId entityId, List<TsKvEntry> tsKvEntries, long ttl) {
         List<ListenableFuture<Void>> futures = Lists.newArrayListWithExpectedSize(tsKvEntries.size() * INSERTS_PER_ENTRY);
+        validateSave(entityId);
         for (TsKvEntry tsKvEntry : tsKvEntries) {
             if (tsKvEntry == null) {
                 throw new IncorrectParameterException("Key value entry can't be null");
             }
-            saveAndRegisterFutures(tenantId, futures, entityId, tsKvEntry, ttl);
+            registerIndexFutures(tenantId, futures, entityId, tsKvEntry, ttl);
         }
+        futures.addAll(timeseriesDao.save(tenantId, entityId, tsKvEntries, ttl));
         return Futures.allAsList(futures);
     }
 
     private void saveAndRegisterFutures(TenantId tenantId, List<ListenableFuture<Void>> futures, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
+        validateSave(entityId);
+        registerIndexFutures(tenantId, futures, entityId, tsKvEntry, ttl);
+        futures.add(timeseriesDao.save(tenantId, entityId, tsKvEntry, ttl));
+    }
+
+    private void registerIndexFutures(TenantId tenantId, List<ListenableFuture<Void>> futures, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
+        futures.add(timeseriesDao.savePartition(tenantId, entityId, tsKvEntry.getTs(), tsKvEntry.getKey(), ttl));
+        futures.add(timeseriesDao.saveLatest(tenantId, entityId, tsKvEntry));
+    }
+
+    private static void validateSave(EntityId entityId) {
         if (entityId.getEntityType().equals(EntityType.ENTITY_VIEW)) {
             throw new IncorrectParameterException("Telemetry data can't be stored for entity view. Read only");
         }
-        futures.add(timeseriesDao.savePartition(tenantId, entityId, tsKvEntry.getTs(), tsKvEntry.getKey(), ttl));
-        futures.add(timeseriesDao.saveLatest(tenantId, entityId, tsKvEntry));
-        futures.add(timeseriesDao.save(tenantId, entityId, tsKvEntry, ttl));
     }
 
     private List<ReadTsKvQuery> updateQueriesForEntityView(EntityView entityView, List<ReadTsKvQuery> queries) {
@@ -159,6 +247,22 @@ public class BaseTimeseriesService implements TimeseriesService {
         }).collect(Collectors.toList());
     }
 
+    /**
+     * Runs a read of a single key. For an entity view the read goes to the entity of the view, limited to the
+     * time range of the view, or returns the empty result if the view does not expose the key.
+     */
+    private <T> T readForEntityView(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, Supplier<T> empty,
+                                    BiFunction<EntityId, ReadTsKvQuery, T> read) {
+        if (!entityId.getEntityType().equals(EntityType.ENTITY_VIEW)) {
+            return read.apply(entityId, query);
+        }
+        EntityView entityView = entityViewService.findEntityViewById(tenantId, (EntityViewId) entityId);
+        if (!entityView.getKeys().getTimeseries().isEmpty() && !entityView.getKeys().getTimeseries().contains(query.getKey())) {
+            return empty.get();
+        }
+        return read.apply(entityView.getEntityId(), updateQueriesForEntityView(entityView, Collections.singletonList(query)).get(0));
+    }
+
     @Override
     public ListenableFuture<List<Void>> remove(TenantId tenantId, EntityId entityId, List<DeleteTsKvQuery> deleteTsKvQueries) {
         validate(entityId);
@@ -167,12 +271,14 @@ public class BaseTimeseriesService implements TimeseriesService {
         for (DeleteTsKvQuery tsKvQuery : deleteTsKvQueries) {
             deleteAndRegisterFutures(tenantId, futures, entityId, tsKvQuery);
         }
+        if (!deleteTsKvQueries.isEmpty()) {
+            futures.add(timeseriesDao.removeLatest(tenantId, entityId, deleteTsKvQueries));
+        }
         return Futures.allAsList(futures);
     }
 
     private void deleteAndRegisterFutures(TenantId tenantId, List<ListenableFuture<Void>> futures, EntityId entityId, DeleteTsKvQuery query) {
         futures.add(timeseriesDao.remove(tenantId, entityId, query));
-        futures.add(timeseriesDao.removeLatest(tenantId, entityId, query));
         futures.add(timeseriesDao.removePartition(tenantId, entityId, query));
     }
 
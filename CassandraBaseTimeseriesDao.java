@@ -1,5 +1,6 @@
 package org.thingsboard.server.dao.timeseries;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
@@ -9,26 +10,28 @@ import com.datastax.driver.core.Statement;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 import com.google.common.base.Function;
+import com.google.common.cache.CacheStats;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.Aggregation;
 import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
-import org.thingsboard.server.common.data.kv.BooleanDataEntry;
 import org.thingsboard.server.common.data.kv.DataType;
 import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
-import org.thingsboard.server.common.data.kv.DoubleDataEntry;
 import org.thingsboard.server.common.data.kv.KvEntry;
-import org.thingsboard.server.common.data.kv.LongDataEntry;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.StringDataEntry;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
@@ -39,16 +42,26 @@ import org.thingsboard.server.dao.util.NoSqlTsDao;
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.io.File;
+import java.io.IOException;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
@@ -82,19 +95,221 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
     @Value("${cassandra.query.set_null_values_enabled}")
     private boolean setNullValuesEnabled;
 
+    @Value("${cassandra.query.bucketed_aggregation_enabled:false}")
+    private boolean bucketedAggregationEnabled;
+
+    @Value("${cassandra.query.bucketed_aggregation_fetch_size:5000}")
+    private int bucketedAggregationFetchSize;
+
+    @Value("${cassandra.query.ts_partitions_cache.enabled:false}")
+    private boolean partitionsCacheEnabled;
+
+    @Value("${cassandra.query.ts_partitions_cache.max_size:100000}")
+    private long partitionsCacheMaxSize;
+
+    @Value("${cassandra.query.ts_partitions_cache.ttl_sec:300}")
+    private long partitionsCacheTtlSec;
+
+    @Value("${cassandra.query.ts_partitions_write_filter.enabled:false}")
+    private boolean partitionWriteFilterEnabled;
+
+    @Value("${cassandra.query.ts_partitions_write_filter.size:65536}")
+    private int partitionWriteFilterSize;
+
+    @Value("${cassandra.query.ts_partitions_write_filter.refresh_sec:3600}")
+    private long partitionWriteFilterRefreshSec;
+
+    @Value("${cassandra.query.ts_batch_writes.enabled:false}")
+    private boolean batchWritesEnabled;
+
+    @Value("${cassandra.query.ts_batch_writes.max_size:100}")
+    private int batchWritesMaxSize;
+
+    @Value("${cassandra.query.ts_latest_write_behind.enabled:false}")
+    private boolean latestWriteBehindEnabled;
+
+    @Value("${cassandra.query.ts_latest_write_behind.flush_interval_ms:1000}")
+    private long latestWriteBehindFlushIntervalMs;
+
+    @Value("${cassandra.query.ts_latest_write_behind.flush_threshold:10000}")
+    private int latestWriteBehindFlushThreshold;
+
+    @Value("${cassandra.query.ts_latest_write_behind.max_size:100000}")
+    private int latestWriteBehindMaxSize;
+
+    @Value("${cassandra.query.ts_latest_max_future_ms:60000}")
+    private long latestMaxFutureMs;
+
+    @Value("${cassandra.query.ts_latest_cache.enabled:false}")
+    private boolean latestCacheEnabled;
+
+    @Value("${cassandra.query.ts_latest_cache.max_size:100000}")
+    private long latestCacheMaxSize;
+
+    @Value("${cassandra.query.ts_latest_cache.ttl_sec:60}")
+    private long latestCacheTtlSec;
+
+    @Value("${cassandra.query.ts_read_ahead_partitions:0}")
+    private int readAheadPartitions;
+
+    @Value("${cassandra.query.ts_stream_fetch_size:1000}")
+    private int streamFetchSize;
+
+    @Value("${cassandra.query.ts_rollups.enabled:false}")
+    private boolean rollupsEnabled;
+
+    @Value("${cassandra.query.ts_rollups.flush_interval_ms:10000}")
+    private long rollupsFlushIntervalMs;
+
+    @Value("${cassandra.query.ts_rollups.max_size:100000}")
+    private int rollupsMaxSize;
+
+    @Value("${cassandra.query.ts_rollups.available_from_ts:0}")
+    private long rollupsAvailableFromTs;
+
+    @Value("${cassandra.query.ts_rollups.state_file:ts-rollups.state}")
+    private String rollupsStateFile;
+
+    @Value("${cassandra.query.ts_aggregation_cache.enabled:false}")
+    private boolean aggregationCacheEnabled;
+
+    @Value("${cassandra.query.ts_aggregation_cache.max_series:10000}")
+    private long aggregationCacheMaxSeries;
+
+    @Value("${cassandra.query.ts_aggregation_cache.max_intervals_per_series:10000}")
+    private int aggregationCacheMaxIntervalsPerSeries;
+
+    @Value("${cassandra.query.ts_aggregation_cache.ttl_sec:3600}")
+    private long aggregationCacheTtlSec;
+
+    @Value("${cassandra.query.ts_aggregation_cache.closed_after_ms:60000}")
+    private long aggregationCacheClosedAfterMs;
+
+    @Value("${cassandra.query.ts_multi_key_fetch_enabled:false}")
+    private boolean multiKeyFetchEnabled;
+
+    @Value("${cassandra.query.ts_latest_bulk_parallelism:16}")
+    private int latestBulkParallelism;
+
+    @Value("${cassandra.query.ts_delete.parallelism:0}")
+    private int deleteParallelism;
+
+    @Value("${cassandra.query.ts_delete.progress_log_interval:1000}")
+    private int deleteProgressLogInterval;
+
+    @Value("${cassandra.query.ts_compaction.enabled:false}")
+    private boolean compactionEnabled;
+
+    @Value("${cassandra.query.ts_compaction.read_blocks:${cassandra.query.ts_compaction.enabled:false}}")
+    private boolean compactedReadsEnabled;
+
+    @Value("${cassandra.query.ts_compaction.closed_after_ms:86400000}")
+    private long compactionClosedAfterMs;
+
+    @Value("${cassandra.query.ts_compaction.block_size:10000}")
+    private int compactionBlockSize;
+
+    @Value("${cassandra.query.ts_compaction.parallelism:4}")
+    private int compactionParallelism;
+
+    @Value("${cassandra.query.ts_compaction.max_candidates:100000}")
+    private int compactionMaxCandidates;
+
+    @Value("${cassandra.query.ts_journal.enabled:false}")
+    private boolean journalEnabled;
+
+    @Value("${cassandra.query.ts_journal.dir:ts-journal}")
+    private String journalDir;
+
+    @Value("${cassandra.query.ts_journal.segment_size_mb:64}")
+    private int journalSegmentSizeMb;
+
+    @Value("${cassandra.query.ts_journal.max_size_mb:4096}")
+    private long journalMaxSizeMb;
+
+    @Value("${cassandra.query.ts_journal.max_in_flight:256}")
+    private int journalMaxInFlight;
+
+    @Value("${cassandra.query.ts_journal.poll_interval_ms:20}")
+    private long journalPollIntervalMs;
+
+    @Value("${cassandra.query.ts_journal.flush_interval_ms:1000}")
+    private long journalFlushIntervalMs;
+
+    @Value("${cassandra.query.ts_journal.group_commit_interval_ms:10}")
+    private long journalGroupCommitIntervalMs;
+
+    @Value("${cassandra.query.ts_journal.retry_delay_ms:1000}")
+    private long journalRetryDelayMs;
+
+    @Value("${cassandra.query.ts_journal.max_retries:10}")
+    private int journalMaxRetries;
+
+    @Value("${cassandra.query.ts_key_partitioning.enabled:false}")
+    private boolean keyPartitioningEnabled;
+
+    @Value("${cassandra.query.ts_key_partitioning.keys:}")
+    private String keyPartitionings;
+
+    @Value("${cassandra.query.ts_key_partitioning.cache_max_size:100000}")
+    private long keyPartitioningCacheMaxSize;
+
+    @Value("${cassandra.query.ts_key_partitioning.cache_ttl_sec:300}")
+    private long keyPartitioningCacheTtlSec;
+
+    @Value("${cassandra.query.ts_partitions_enumeration.keys:}")
+    private String partitionsEnumerationKeys;
+
+    @Value("${cassandra.query.ts_partitions_enumeration.max_partitions:1000}")
+    private int partitionsEnumerationMaxPartitions;
+
     private TsPartitionDate tsFormat;
 
+    private TsPartitioningSchedule defaultPartitioning;
+
+    private TsPartitioningCache partitioningCache;
+
+    private Set<String> enumeratedPartitionKeys = Collections.emptySet();
+
+    private TsPartitionsCache partitionsCache;
+
+    private TsPartitionWriteFilter partitionWriteFilter;
+
+    private TsLatestWriteBuffer latestWriteBuffer;
+    private ScheduledExecutorService latestFlushExecutor;
+    private final AtomicBoolean latestFlushScheduled = new AtomicBoolean();
+
+    private TsLatestCache latestCache;
+
+    private TsKvRollupStore rollupStore;
+
+    private TsAggregationCache aggregationCache;
+
+    private TsKvCompactor compactor;
+
+    private TsWriteJournalDrainer journalDrainer;
+
     private PreparedStatement partitionInsertStmt;
     private PreparedStatement partitionInsertTtlStmt;
     private PreparedStatement latestInsertStmt;
+    private PreparedStatement latestInsertTimestampStmt;
+    private PreparedStatement latestDeleteTimestampStmt;
+    private PreparedStatement latestWriteTimeStmt;
     private PreparedStatement[] saveStmts;
     private PreparedStatement[] saveTtlStmts;
+    private PreparedStatement[] saveWithNullsStmts;
+    private PreparedStatement[] saveWithNullsTtlStmts;
     private PreparedStatement[] fetchStmtsAsc;
     private PreparedStatement[] fetchStmtsDesc;
     private PreparedStatement findLatestStmt;
+    private PreparedStatement findLatestByKeysStmt;
     private PreparedStatement findAllLatestStmt;
     private PreparedStatement deleteStmt;
+    private PreparedStatement dropPartitionStmt;
     private PreparedStatement deletePartitionStmt;
+    private PreparedStatement multiKeyFetchStmt;
+    private PreparedStatement partitioningInsertStmt;
+    private PreparedStatement partitioningFetchStmt;
 
     private boolean isInstall() {
         return environment.acceptsProfiles("install");
@@ -112,17 +327,126 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
                 log.warn("Incorrect configuration of partitioning {}", partitioning);
                 throw new RuntimeException("Failed to parse partitioning property: " + partitioning + "!");
             }
+            defaultPartitioning = TsPartitioningSchedule.of(tsFormat);
+            if (keyPartitioningEnabled) {
+                if (isFixedPartitioning()) {
+                    log.warn("Per key partitioning is not supported with {} partitioning", tsFormat);
+                } else {
+                    partitioningCache = new TsPartitioningCache(tsFormat, TsPartitioningCache.parseKeyPartitionings(keyPartitionings),
+                            keyPartitioningCacheMaxSize, keyPartitioningCacheTtlSec);
+                }
+            }
+            if (!partitionsEnumerationKeys.trim().isEmpty()) {
+                enumeratedPartitionKeys = Arrays.stream(partitionsEnumerationKeys.split(","))
+                        .map(String::trim)
+                        .filter(key -> !key.isEmpty())
+                        .collect(Collectors.toSet());
+            }
+            if (partitionsCacheEnabled && !isFixedPartitioning()) {
+                partitionsCache = new TsPartitionsCache(partitionsCacheMaxSize, partitionsCacheTtlSec);
+            }
+            if (partitionWriteFilterEnabled && !isFixedPartitioning()) {
+                partitionWriteFilter = new TsPartitionWriteFilter(partitionWriteFilterSize, TimeUnit.SECONDS.toMillis(partitionWriteFilterRefreshSec));
+            }
+            if (latestWriteBehindEnabled) {
+                latestWriteBuffer = new TsLatestWriteBuffer(latestWriteBehindMaxSize);
+                latestFlushExecutor = Executors.newSingleThreadScheduledExecutor();
+                latestFlushExecutor.scheduleWithFixedDelay(this::flushLatest,
+                        latestWriteBehindFlushIntervalMs, latestWriteBehindFlushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+            if (latestCacheEnabled) {
+                latestCache = new TsLatestCache(latestCacheMaxSize, latestCacheTtlSec, latestWriteBuffer != null);
+            }
+            if (aggregationCacheEnabled) {
+                aggregationCache = new TsAggregationCache(aggregationCacheMaxSeries, aggregationCacheMaxIntervalsPerSeries,
+                        aggregationCacheTtlSec, aggregationCacheClosedAfterMs);
+            }
+            if (rollupsEnabled) {
+                rollupStore = new TsKvRollupStore(this, readResultsProcessingExecutor, rollupsFlushIntervalMs, rollupsMaxSize,
+                        rollupsAvailableFromTs, rollupsStateFile);
+            }
+            if (compactedReadsEnabled && !isFixedPartitioning()) {
+                compactor = new TsKvCompactor(this, readResultsProcessingExecutor, compactionEnabled, compactionClosedAfterMs, compactionBlockSize,
+                        compactionParallelism, compactionMaxCandidates, streamFetchSize);
+            }
+            if (journalEnabled) {
+                TsWriteJournal journal;
+                try {
+                    journal = new TsWriteJournal(new File(journalDir), journalSegmentSizeMb * 1024 * 1024, journalMaxSizeMb * 1024 * 1024);
+                } catch (IOException e) {
+                    log.error("Failed to open timeseries journal in {}", journalDir, e);
+                    throw new RuntimeException("Failed to open timeseries journal in " + journalDir + "!", e);
+                }
+                journalDrainer = new TsWriteJournalDrainer(journal, this::writeJournalRecord, readResultsProcessingExecutor, journalMaxInFlight,
+                        journalPollIntervalMs, journalGroupCommitIntervalMs, journalFlushIntervalMs, journalRetryDelayMs, journalMaxRetries);
+            }
         }
     }
 
     @PreDestroy
     public void stop() {
+        if (latestFlushExecutor != null) {
+            latestFlushExecutor.shutdownNow();
+            try {
+                flushLatest().get(latestWriteBehindFlushIntervalMs + 10000, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                log.warn("Failed to flush pending latest values", e);
+            }
+        }
+        if (rollupStore != null) {
+            rollupStore.stop();
+        }
+        if (journalDrainer != null) {
+            journalDrainer.stop();
+        }
         super.stopExecutor();
     }
 
+    @Scheduled(fixedDelayString = "${cassandra.query.ts_cache_stats_print_interval_ms:60000}")
+    public void printCacheStats() {
+        if (partitionsCache != null) {
+            CacheStats stats = partitionsCache.stats();
+            log.info("Partitions cache size [{}] hitCount [{}] missCount [{}] hitRate [{}] evictionCount [{}]",
+                    partitionsCache.size(), stats.hitCount(), stats.missCount(), stats.hitRate(), stats.evictionCount());
+        }
+        if (latestCache != null) {
+            CacheStats stats = latestCache.stats();
+            CacheStats allStats = latestCache.allLatestStats();
+            log.info("Latest cache size [{}] hitRate [{}] evictionCount [{}], all latest cache size [{}] hitRate [{}] evictionCount [{}]",
+                    latestCache.size(), stats.hitRate(), stats.evictionCount(),
+                    latestCache.allLatestSize(), allStats.hitRate(), allStats.evictionCount());
+        }
+        if (aggregationCache != null) {
+            CacheStats stats = aggregationCache.stats();
+            log.info("Aggregation cache series [{}] hitRate [{}] evictionCount [{}]", aggregationCache.size(), stats.hitRate(), stats.evictionCount());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cassandra.query.ts_compaction.interval_ms:600000}")
+    public void compactClosedPartitions() {
+        if (compactor != null) {
+            compactor.compactClosedPartitions();
+        }
+    }
+
+    /**
+     * Compacts a closed partition of the key, see {@link TsKvCompactor#compactPartition}.
+     */
+    public ListenableFuture<Void> compactPartition(TenantId tenantId, EntityId entityId, String key, long partition) {
+        if (compactor == null) {
+            return Futures.immediateFuture(null);
+        }
+        return compactor.compactPartition(tenantId, entityId, key, partition);
+    }
+
     @Override
     public ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
-        List<ListenableFuture<List<TsKvEntry>>> futures = queries.stream().map(query -> findAllAsync(tenantId, entityId, query)).collect(Collectors.toList());
+        List<ListenableFuture<List<TsKvEntry>>> futures;
+        if (multiKeyFetchEnabled && isBucketedAggregation()) {
+            futures = findAllAsyncGrouped(tenantId, entityId, queries);
+        } else {
+            futures = queries.stream().map(query -> findAllAsync(tenantId, entityId, query)).collect(Collectors.toList());
+        }
         return Futures.transform(Futures.allAsList(futures), new Function<List<List<TsKvEntry>>, List<TsKvEntry>>() {
             @Nullable
             @Override
@@ -137,19 +461,54 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         }, readResultsProcessingExecutor);
     }
 
+    /**
+     * Aggregated queries that share the time range and aggregation are fetched together, with one multi-key query
+     * per partition, and the results are split back out per key. Raw queries keep their own per key limit and order.
+     */
+    private List<ListenableFuture<List<TsKvEntry>>> findAllAsyncGrouped(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        Map<TsKvAggregationRange, Map<String, ReadTsKvQuery>> groups = new LinkedHashMap<>();
+        for (ReadTsKvQuery query : queries) {
+            if (query.getAggregation() != Aggregation.NONE) {
+                groups.computeIfAbsent(TsKvAggregationRange.of(query), range -> new LinkedHashMap<>()).putIfAbsent(query.getKey(), query);
+            }
+        }
+        Map<TsKvAggregationRange, ListenableFuture<Map<String, List<TsKvEntry>>>> groupFutures = new HashMap<>();
+        groups.forEach((range, group) -> {
+            if (group.size() > 1) {
+                groupFutures.put(range, findAllAsyncWithBucketedAggregation(tenantId, entityId, new ArrayList<>(group.values())));
+            }
+        });
+        List<ListenableFuture<List<TsKvEntry>>> futures = new ArrayList<>(queries.size());
+        for (ReadTsKvQuery query : queries) {
+            ListenableFuture<Map<String, List<TsKvEntry>>> groupFuture = query.getAggregation() != Aggregation.NONE ? groupFutures.get(TsKvAggregationRange.of(query)) : null;
+            if (groupFuture != null) {
+                futures.add(Futures.transform(groupFuture, data -> data.get(query.getKey()), readResultsProcessingExecutor));
+            } else {
+                futures.add(findAllAsync(tenantId, entityId, query));
+            }
+        }
+        return futures;
+    }
 
     private ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
         if (query.getAggregation() == Aggregation.NONE) {
             return findAllAsyncWithLimit(tenantId, entityId, query);
+        } else if (isBucketedAggregation()) {
+            return findAllAsyncWithBucketedAggregation(tenantId, entityId, query);
         } else {
             long step = Math.max(query.getInterval(), MIN_AGGREGATION_STEP_MS);
             long stepTs = query.getStartTs();
+            long now = System.currentTimeMillis();
             List<ListenableFuture<Optional<TsKvEntry>>> futures = new ArrayList<>();
             while (stepTs < query.getEndTs()) {
                 long startTs = stepTs;
                 long endTs = stepTs + step;
                 ReadTsKvQuery subQuery = new BaseReadTsKvQuery(query.getKey(), startTs, endTs, step, 1, query.getAggregation(), query.getOrderBy());
-                futures.add(findAndAggregateAsync(tenantId, entityId, subQuery, toPartitionTs(startTs), toPartitionTs(endTs)));
+                if (aggregationCache != null && aggregationCache.isClosed(endTs, now)) {
+                    futures.add(findAndAggregateCachedAsync(tenantId, entityId, subQuery, step));
+                } else {
+                    futures.add(findAndAggregateAsync(tenantId, entityId, subQuery));
+                }
                 stepTs = endTs;
             }
             ListenableFuture<List<Optional<TsKvEntry>>> future = Futures.allAsList(futures);
@@ -163,87 +522,613 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         }
     }
 
+    /**
+     * Compacted partitions can only be aggregated from decoded points, not with CQL aggregates.
+     */
+    private boolean isBucketedAggregation() {
+        return bucketedAggregationEnabled || rollupStore != null || compactor != null;
+    }
+
+    @Override
+    public TsKvStream stream(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        // set before the partitions are listed, so the readers below always see it
+        AtomicReference<TsPartitioningSchedule> partitioningRef = new AtomicReference<>();
+        ListenableFuture<List<Long>> partitionsListFuture = Futures.transformAsync(getPartitioning(tenantId, entityId, query.getKey()), partitioning -> {
+            partitioningRef.set(partitioning);
+            return getPartitionsFuture(tenantId, query, entityId, partitioning, partitioning.toPartitionTs(query.getStartTs()), partitioning.toPartitionTs(query.getEndTs()));
+        }, MoreExecutors.directExecutor());
+        PreparedStatement proto = getFetchStmt(Aggregation.NONE, query.getOrderBy());
+        TsKvPartitionStream.CompactedPartitionReader compactedReader = compactor == null ? null : new TsKvPartitionStream.CompactedPartitionReader() {
+            @Override
+            public boolean isCompacted(long partition) {
+                return isCompactedPartition(partitioningRef.get(), partition);
+            }
+
+            @Override
+            public TsKvStream open(long partition, int limit) {
+                return compactor.openCompactedPartition(tenantId, entityId, query.getKey(), partition, query.getStartTs(), query.getEndTs(), query.getOrderBy(), limit);
+            }
+        };
+        return new TsKvPartitionStream(partitionsListFuture, query.getOrderBy(), query.getLimit(), (partition, limit) -> {
+            BoundStatement stmt = proto.bind();
+            stmt.setString(0, entityId.getEntityType().name());
+            stmt.setUUID(1, entityId.getId());
+            stmt.setString(2, query.getKey());
+            stmt.setLong(3, partition);
+            stmt.setLong(4, query.getStartTs());
+            stmt.setLong(5, query.getEndTs());
+            stmt.setInt(6, limit);
+            stmt.setFetchSize(streamFetchSize);
+            log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, entityId.getEntityType(), entityId.getId());
+            return executeAsyncRead(tenantId, stmt);
+        }, compactedReader, TsKvRowDecoder.converter(), readResultsProcessingExecutor);
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllDownsampled(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsDownsamplingMode mode, int points) {
+        TsKvDownsampler downsampler = TsKvDownsampler.of(mode, query.getStartTs(), query.getEndTs(), points);
+        return TsKvStreamConsumer.consume(stream(tenantId, entityId, TsKvDownsampler.toRawQuery(query)), downsampler, readResultsProcessingExecutor);
+    }
+
+    /**
+     * Builds one partial sketch aggregator per partition and merges the partials as the partitions complete.
+     */
+    @Override
+    public ListenableFuture<List<TsKvEntry>> findAllSketchAggregated(TenantId tenantId, EntityId entityId, ReadTsKvQuery query,
+                                                                     TsSketchAggregation aggregation, double quantile) {
+        long step = Math.max(query.getInterval(), MIN_AGGREGATION_STEP_MS);
+        TsKvSketchAggregator aggregator = new TsKvSketchAggregator(query, step, aggregation, quantile);
+        ListenableFuture<List<Void>> folded = Futures.transformAsync(getPartitioning(tenantId, entityId, query.getKey()),
+                partitioning -> foldSketchPartitions(tenantId, entityId, query, aggregator, partitioning), MoreExecutors.directExecutor());
+        return Futures.transform(folded, input -> aggregator.getData(), readResultsProcessingExecutor);
+    }
+
+    private ListenableFuture<List<Void>> foldSketchPartitions(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsKvSketchAggregator aggregator,
+                                                              TsPartitioningSchedule partitioning) {
+        long minPartition = partitioning.toPartitionTs(aggregator.getStartTs());
+        long maxPartition = partitioning.toPartitionTs(aggregator.getEndTs());
+        ListenableFuture<List<Long>> partitionsListFuture = getPartitionsFuture(tenantId, query, entityId, partitioning, minPartition, maxPartition);
+        return Futures.transformAsync(partitionsListFuture, partitions -> {
+            PreparedStatement proto = getFetchStmt(Aggregation.NONE, ASC_ORDER);
+            List<ListenableFuture<Void>> futures = new ArrayList<>(partitions.size());
+            for (Long partition : partitions) {
+                BoundStatement stmt = proto.bind();
+                stmt.setString(0, entityId.getEntityType().name());
+                stmt.setUUID(1, entityId.getId());
+                stmt.setString(2, query.getKey());
+                stmt.setLong(3, partition);
+                stmt.setLong(4, aggregator.getStartTs());
+                stmt.setLong(5, aggregator.getEndTs());
+                stmt.setInt(6, Integer.MAX_VALUE);
+                TsKvSketchAggregator partial = aggregator.newPartial();
+                ListenableFuture<Void> partitionFuture = isCompactedPartition(partitioning, partition) ?
+                        compactor.foldCompactedPartition(tenantId, entityId, query.getKey(), partition, aggregator.getStartTs(), aggregator.getEndTs(), partial::add) :
+                        fetchAndFold(tenantId, entityId, stmt, partial::processRow);
+                futures.add(Futures.transform(partitionFuture, result -> {
+                    aggregator.merge(partial);
+                    return null;
+                }, readResultsProcessingExecutor));
+            }
+            return Futures.allAsList(futures);
+        }, readResultsProcessingExecutor);
+    }
+
     public boolean isFixedPartitioning() {
         return tsFormat.getTruncateUnit().equals(ChronoUnit.FOREVER);
     }
 
-    private ListenableFuture<List<Long>> getPartitionsFuture(TenantId tenantId, ReadTsKvQuery query, EntityId entityId, long minPartition, long maxPartition) {
+    private ListenableFuture<List<Long>> getPartitionsFuture(TenantId tenantId, ReadTsKvQuery query, EntityId entityId, TsPartitioningSchedule partitioning,
+                                                             long minPartition, long maxPartition) {
         if (isFixedPartitioning()) { //no need to fetch partitions from DB
             return Futures.immediateFuture(FIXED_PARTITION);
         }
+        List<Long> enumerated = enumeratePartitions(partitioning, query.getKey(), minPartition, maxPartition);
+        if (enumerated != null) {
+            return Futures.immediateFuture(enumerated);
+        }
+        if (partitionsCache != null) {
+            return getCachedPartitionsFuture(tenantId, entityId, query.getKey(), partitioning, minPartition, maxPartition);
+        }
         ResultSetFuture partitionsFuture = fetchPartitions(tenantId, entityId, query.getKey(), minPartition, maxPartition);
         return Futures.transform(partitionsFuture, getPartitionsArrayFunction(), readResultsProcessingExecutor);
     }
 
+    /**
+     * Returns the sorted union of the partitions of all given keys.
+     */
+    private ListenableFuture<List<Long>> getPartitionsFuture(TenantId tenantId, EntityId entityId, Map<String, TsPartitioningSchedule> partitionings,
+                                                             long minPartition, long maxPartition) {
+        if (isFixedPartitioning()) {
+            return Futures.immediateFuture(FIXED_PARTITION);
+        }
+        List<String> keys = new ArrayList<>(partitionings.keySet());
+        List<List<Long>> enumerated = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            List<Long> partitions = enumeratePartitions(partitionings.get(key), key, minPartition, maxPartition);
+            if (partitions == null) {
+                break;
+            }
+            enumerated.add(partitions);
+        }
+        ListenableFuture<List<List<Long>>> partitionsFuture;
+        if (enumerated.size() == keys.size()) {
+            partitionsFuture = Futures.immediateFuture(enumerated);
+        } else if (partitionsCache != null) {
+            partitionsFuture = Futures.allAsList(keys.stream()
+                    .map(key -> getCachedPartitionsFuture(tenantId, entityId, key, partitionings.get(key), minPartition, maxPartition))
+                    .collect(Collectors.toList()));
+        } else {
+            Select.Where select = QueryBuilder.select(ModelConstants.PARTITION_COLUMN).from(ModelConstants.TS_KV_PARTITIONS_CF).where(eq(ModelConstants.ENTITY_TYPE_COLUMN, entityId.getEntityType().name()))
+                    .and(eq(ModelConstants.ENTITY_ID_COLUMN, entityId.getId())).and(QueryBuilder.in(ModelConstants.KEY_COLUMN, keys));
+            select.and(QueryBuilder.gte(ModelConstants.PARTITION_COLUMN, minPartition));
+            select.and(QueryBuilder.lte(ModelConstants.PARTITION_COLUMN, maxPartition));
+            partitionsFuture = Futures.transform(executeAsyncRead(tenantId, select),
+                    rs -> Collections.singletonList(getPartitionsArrayFunction().apply(rs)), readResultsProcessingExecutor);
+        }
+        return Futures.transform(partitionsFuture, partitionsLists -> partitionsLists.stream()
+                .flatMap(List::stream)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList()), readResultsProcessingExecutor);
+    }
+
+    /**
+     * Lists the partitions of densely written keys from the partitioning schedule instead of the partitions table.
+     * Partitions nobody wrote to are listed as well and simply read empty.
+     *
+     * @return null if the key is not configured in <code>cassandra.query.ts_partitions_enumeration.keys</code>
+     * or the range covers more than <code>cassandra.query.ts_partitions_enumeration.max_partitions</code> partitions
+     */
+    private List<Long> enumeratePartitions(TsPartitioningSchedule partitioning, String key, long minPartition, long maxPartition) {
+        if (!enumeratedPartitionKeys.contains(key) && !enumeratedPartitionKeys.contains("*")) {
+            return null;
+        }
+        return partitioning.partitionsBetween(minPartition, maxPartition, partitionsEnumerationMaxPartitions);
+    }
+
+    /**
+     * Serves partitions from the cache, loading the complete partition list of the key on a miss.
+     * The partition of the current time is always probed, since other nodes may have created it after the list was cached.
+     */
+    private ListenableFuture<List<Long>> getCachedPartitionsFuture(TenantId tenantId, EntityId entityId, String key, TsPartitioningSchedule partitioning,
+                                                                   long minPartition, long maxPartition) {
+        List<Long> partitions = partitionsCache.get(entityId, key, minPartition, maxPartition);
+        if (partitions != null) {
+            long currentPartition = partitioning.toPartitionTs(System.currentTimeMillis());
+            if (currentPartition >= minPartition && currentPartition <= maxPartition && !partitions.contains(currentPartition)) {
+                partitions.add(currentPartition);
+                Collections.sort(partitions);
+            }
+            return Futures.immediateFuture(partitions);
+        }
+        ResultSetFuture partitionsFuture = fetchPartitions(tenantId, entityId, key, Long.MIN_VALUE, Long.MAX_VALUE);
+        return Futures.transform(partitionsFuture, rs -> {
+            List<Long> allPartitions = getPartitionsArrayFunction().apply(rs);
+            partitionsCache.put(entityId, key, allPartitions);
+            return allPartitions.stream()
+                    .filter(partition -> partition >= minPartition && partition <= maxPartition)
+                    .collect(Collectors.toList());
+        }, readResultsProcessingExecutor);
+    }
+
     private ListenableFuture<List<TsKvEntry>> findAllAsyncWithLimit(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
-        long minPartition = toPartitionTs(query.getStartTs());
-        long maxPartition = toPartitionTs(query.getEndTs());
-        final ListenableFuture<List<Long>> partitionsListFuture = getPartitionsFuture(tenantId, query, entityId, minPartition, maxPartition);
+        return findAllAsyncWithLimit(tenantId, entityId, query, readAheadPartitions);
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAllAsyncWithLimit(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, int readAhead) {
+        return Futures.transformAsync(getPartitioning(tenantId, entityId, query.getKey()),
+                partitioning -> findAllAsyncWithLimit(tenantId, entityId, query, readAhead, partitioning), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<TsKvEntry>> findAllAsyncWithLimit(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, int readAhead,
+                                                                    TsPartitioningSchedule partitioning) {
+        long minPartition = partitioning.toPartitionTs(query.getStartTs());
+        long maxPartition = partitioning.toPartitionTs(query.getEndTs());
+        final ListenableFuture<List<Long>> partitionsListFuture = getPartitionsFuture(tenantId, query, entityId, partitioning, minPartition, maxPartition);
         final SimpleListenableFuture<List<TsKvEntry>> resultFuture = new SimpleListenableFuture<>();
 
         Futures.addCallback(partitionsListFuture, new FutureCallback<List<Long>>() {
             @Override
             public void onSuccess(@Nullable List<Long> partitions) {
-                TsKvQueryCursor cursor = new TsKvQueryCursor(entityId.getEntityType().name(), entityId.getId(), query, partitions);
-                findAllAsyncSequentiallyWithLimit(tenantId, cursor, resultFuture);
+                TsKvQueryCursor cursor = new TsKvQueryCursor(entityId.getEntityType().name(), entityId.getId(), query, partitions, readAhead);
+                findAllAsyncSequentiallyWithLimit(tenantId, partitioning, cursor, resultFuture);
             }
 
             @Override
             public void onFailure(Throwable t) {
-                log.error("[{}][{}] Failed to fetch partitions for interval {}-{}", entityId.getEntityType().name(), entityId.getId(), toPartitionTs(query.getStartTs()), toPartitionTs(query.getEndTs()), t);
+                log.error("[{}][{}] Failed to fetch partitions for interval {}-{}", entityId.getEntityType().name(), entityId.getId(), minPartition, maxPartition, t);
+                resultFuture.setException(t);
             }
         }, readResultsProcessingExecutor);
 
         return resultFuture;
     }
 
-    private long toPartitionTs(long ts) {
-        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
-        return tsFormat.truncatedTo(time).toInstant(ZoneOffset.UTC).toEpochMilli();
+    /**
+     * Partitioning of the key for reads, the global partitioning unless per key partitioning is enabled. The future
+     * of a schedule that is not cached completes on the results processing executor, so callers may continue on the
+     * direct executor.
+     */
+    ListenableFuture<TsPartitioningSchedule> getPartitioning(TenantId tenantId, EntityId entityId, String key) {
+        if (partitioningCache == null) {
+            return Futures.immediateFuture(defaultPartitioning);
+        }
+        return partitioningCache.get(entityId, key, () -> loadPartitioning(tenantId, entityId, key));
     }
 
-    private void findAllAsyncSequentiallyWithLimit(TenantId tenantId, final TsKvQueryCursor cursor, final SimpleListenableFuture<List<TsKvEntry>> resultFuture) {
-        if (cursor.isFull() || !cursor.hasNextPartition()) {
+    /**
+     * Partitioning of the key for writes. Schedules a change if the configured granularity of the key differs from
+     * the latest one. The change applies from the first partition boundary that is at least twice the cache ttl ahead,
+     * so all nodes have reloaded the schedule by then and points already written keep their partitions.
+     */
+    private ListenableFuture<TsPartitioningSchedule> getWritePartitioning(TenantId tenantId, EntityId entityId, String key) {
+        ListenableFuture<TsPartitioningSchedule> partitioningFuture = getPartitioning(tenantId, entityId, key);
+        if (partitioningCache == null) {
+            return partitioningFuture;
+        }
+        TsPartitionDate target = partitioningCache.getTargetPartitioning(key);
+        return Futures.transformAsync(partitioningFuture, partitioning -> {
+            if (partitioning.getLatestPartitioning() == target) {
+                return partitioningFuture;
+            }
+            long sinceTs = partitioning.getChangeTs(System.currentTimeMillis() + 2 * partitioningCache.getTtlMs());
+            log.info("[{}][{}] Changing partitioning of key [{}] from {} to {} since {}", entityId.getEntityType(), entityId.getId(), key,
+                    partitioning.getLatestPartitioning(), target, sinceTs);
+            BoundStatement stmt = getPartitioningInsertStmt().bind();
+            stmt.setString(0, entityId.getEntityType().name());
+            stmt.setUUID(1, entityId.getId());
+            stmt.setString(2, key);
+            stmt.setLong(3, sinceTs);
+            stmt.setString(4, target.name());
+            ListenableFuture<TsPartitioningSchedule> changed = Futures.transformAsync(executeAsyncWrite(tenantId, stmt),
+                    rs -> loadPartitioning(tenantId, entityId, key), readResultsProcessingExecutor);
+            partitioningCache.put(entityId, key, changed);
+            return changed;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<TsPartitioningSchedule> loadPartitioning(TenantId tenantId, EntityId entityId, String key) {
+        BoundStatement stmt = getPartitioningFetchStmt().bind();
+        stmt.setString(0, entityId.getEntityType().name());
+        stmt.setUUID(1, entityId.getId());
+        stmt.setString(2, key);
+        return getFuture(executeAsyncRead(tenantId, stmt), rs -> {
+            Map<Long, TsPartitionDate> changes = new HashMap<>();
+            for (Row row : rs) {
+                changes.put(row.getLong(TsPartitioningSchedule.SINCE_TS_COLUMN), TsPartitionDate.valueOf(row.getString(TsPartitioningSchedule.PARTITIONING_COLUMN)));
+            }
+            return TsPartitioningSchedule.of(tsFormat, changes);
+        });
+    }
+
+    private void findAllAsyncSequentiallyWithLimit(TenantId tenantId, TsPartitioningSchedule partitioning, final TsKvQueryCursor cursor,
+                                                   final SimpleListenableFuture<List<TsKvEntry>> resultFuture) {
+        if (cursor.isFull() || (!cursor.hasNextPartition() && !cursor.hasPendingReads())) {
+            cursor.cancelPendingReads();
             resultFuture.set(cursor.getData());
         } else {
-            PreparedStatement proto = getFetchStmt(Aggregation.NONE, cursor.getOrderBy());
-            BoundStatement stmt = proto.bind();
-            stmt.setString(0, cursor.getEntityType());
-            stmt.setUUID(1, cursor.getEntityId());
-            stmt.setString(2, cursor.getKey());
-            stmt.setLong(3, cursor.getNextPartition());
-            stmt.setLong(4, cursor.getStartTs());
-            stmt.setLong(5, cursor.getEndTs());
-            stmt.setInt(6, cursor.getCurrentLimit());
-
-            Futures.addCallback(executeAsyncRead(tenantId, stmt), new FutureCallback<ResultSet>() {
+            while (cursor.canReadAhead()) {
+                cursor.addPendingRead(fetchPartitionWithLimit(tenantId, partitioning, cursor));
+            }
+            Futures.addCallback(cursor.pollPendingRead(), new FutureCallback<List<TsKvEntry>>() {
                 @Override
-                public void onSuccess(@Nullable ResultSet result) {
-                    cursor.addData(convertResultToTsKvEntryList(result == null ? Collections.emptyList() : result.all()));
-                    findAllAsyncSequentiallyWithLimit(tenantId, cursor, resultFuture);
+                public void onSuccess(@Nullable List<TsKvEntry> result) {
+                    cursor.addData(result == null ? Collections.emptyList() : result);
+                    findAllAsyncSequentiallyWithLimit(tenantId, partitioning, cursor, resultFuture);
                 }
 
                 @Override
                 public void onFailure(Throwable t) {
-                    log.error("[{}][{}] Failed to fetch data for query {}-{}", stmt, t);
+                    log.error("[{}][{}] Failed to fetch data for query {}-{}", cursor.getEntityType(), cursor.getEntityId(), cursor.getStartTs(), cursor.getEndTs(), t);
+                    cursor.cancelPendingReads();
+                    resultFuture.setException(t);
                 }
             }, readResultsProcessingExecutor);
         }
     }
 
-    private ListenableFuture<Optional<TsKvEntry>> findAndAggregateAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long minPartition, long maxPartition) {
+    private ListenableFuture<List<TsKvEntry>> fetchPartitionWithLimit(TenantId tenantId, TsPartitioningSchedule partitioning, TsKvQueryCursor cursor) {
+        long partition = cursor.getNextPartition();
+        if (isCompactedPartition(partitioning, partition)) {
+            EntityId entityId = EntityIdFactory.getByTypeAndUuid(cursor.getEntityType(), cursor.getEntityId());
+            List<TsKvEntry> entries = new ArrayList<>();
+            return Futures.transform(TsKvStream.consume(compactor.openCompactedPartition(tenantId, entityId, cursor.getKey(), partition, cursor.getStartTs(),
+                    cursor.getEndTs(), cursor.getOrderBy(), cursor.getCurrentLimit()), entries::addAll, readResultsProcessingExecutor),
+                    result -> entries, readResultsProcessingExecutor);
+        }
+        PreparedStatement proto = getFetchStmt(Aggregation.NONE, cursor.getOrderBy());
+        BoundStatement stmt = proto.bind();
+        stmt.setString(0, cursor.getEntityType());
+        stmt.setUUID(1, cursor.getEntityId());
+        stmt.setString(2, cursor.getKey());
+        stmt.setLong(3, partition);
+        stmt.setLong(4, cursor.getStartTs());
+        stmt.setLong(5, cursor.getEndTs());
+        stmt.setInt(6, cursor.getCurrentLimit());
+        return getFuture(executeAsyncRead(tenantId, stmt), rs -> convertResultToTsKvEntryList(rs == null ? Collections.emptyList() : rs.all()));
+    }
+
+    private ListenableFuture<Optional<TsKvEntry>> findAndAggregateCachedAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long step) {
+        Optional<TsKvEntry> cached = aggregationCache.get(entityId, query.getKey(), query.getAggregation(), query.getStartTs(), step);
+        if (cached != null) {
+            return Futures.immediateFuture(cached);
+        }
+        long generation = aggregationCache.getGeneration(entityId, query.getKey());
+        ListenableFuture<Optional<TsKvEntry>> future = findAndAggregateAsync(tenantId, entityId, query);
+        return Futures.transform(future, result -> {
+            aggregationCache.put(entityId, query.getKey(), query.getAggregation(), query.getStartTs(), step, result, generation);
+            return result;
+        }, readResultsProcessingExecutor);
+    }
+
+    private ListenableFuture<Optional<TsKvEntry>> findAndAggregateAsync(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
         final Aggregation aggregation = query.getAggregation();
         final String key = query.getKey();
         final long startTs = query.getStartTs();
         final long endTs = query.getEndTs();
         final long ts = startTs + (endTs - startTs) / 2;
-        ListenableFuture<List<Long>> partitionsListFuture = getPartitionsFuture(tenantId, query, entityId, minPartition, maxPartition);
+        ListenableFuture<List<Long>> partitionsListFuture = Futures.transformAsync(getPartitioning(tenantId, entityId, key), partitioning ->
+                getPartitionsFuture(tenantId, query, entityId, partitioning, partitioning.toPartitionTs(startTs), partitioning.toPartitionTs(endTs)),
+                MoreExecutors.directExecutor());
         ListenableFuture<List<ResultSet>> aggregationChunks = Futures.transformAsync(partitionsListFuture,
                 getFetchChunksAsyncFunction(tenantId, entityId, key, aggregation, startTs, endTs), readResultsProcessingExecutor);
 
         return Futures.transform(aggregationChunks, new AggregatePartitionsFunction(aggregation, key, ts), readResultsProcessingExecutor);
     }
 
+    private ListenableFuture<List<TsKvEntry>> findAllAsyncWithBucketedAggregation(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        return Futures.transform(findAllAsyncWithBucketedAggregation(tenantId, entityId, Collections.singletonList(query)),
+                data -> data.get(query.getKey()), readResultsProcessingExecutor);
+    }
+
+    /**
+     * @param queries queries of distinct keys with the same time range and aggregation
+     */
+    private ListenableFuture<Map<String, List<TsKvEntry>>> findAllAsyncWithBucketedAggregation(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries) {
+        ReadTsKvQuery query = queries.get(0);
+        long step = Math.max(query.getInterval(), MIN_AGGREGATION_STEP_MS);
+        Map<String, TsKvBucketAggregator> aggregators = new LinkedHashMap<>();
+        queries.forEach(q -> aggregators.put(q.getKey(), new TsKvBucketAggregator(q, step)));
+        TsKvBucketAggregator aggregator = aggregators.get(query.getKey());
+        if (aggregationCache == null) {
+            return Futures.transform(foldBuckets(tenantId, entityId, queries, aggregators, aggregator.getStartTs()), input -> {
+                Map<String, List<TsKvEntry>> data = new HashMap<>();
+                aggregators.forEach((key, keyAggregator) -> data.put(key, keyAggregator.getData()));
+                return data;
+            }, readResultsProcessingExecutor);
+        }
+        return findAllAsyncWithCachedBuckets(tenantId, entityId, queries, aggregators, aggregator);
+    }
+
+    /**
+     * Takes the leading closed intervals cached for all keys from the aggregation cache and folds only the intervals
+     * after them, then caches the closed intervals that were folded. Intervals match those of the per interval path,
+     * so both paths share the cached results.
+     */
+    private ListenableFuture<Map<String, List<TsKvEntry>>> findAllAsyncWithCachedBuckets(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries,
+                                                                                      Map<String, TsKvBucketAggregator> aggregators, TsKvBucketAggregator aggregator) {
+        Aggregation aggregation = aggregator.getAggregation();
+        long step = aggregator.getStep();
+        long now = System.currentTimeMillis();
+        Map<String, Long> generations = new HashMap<>();
+        Map<String, List<Optional<TsKvEntry>>> cachedBuckets = new HashMap<>();
+        int cachedCount = aggregator.getBucketsCount();
+        for (String key : aggregators.keySet()) {
+            // taken before the cache is read, so results of reads racing with a write are not cached
+            generations.put(key, aggregationCache.getGeneration(entityId, key));
+            List<Optional<TsKvEntry>> keyBuckets = new ArrayList<>();
+            for (int i = 0; i < cachedCount; i++) {
+                long bucketStartTs = aggregator.getStartTs() + i * step;
+                Optional<TsKvEntry> cached = aggregationCache.isClosed(bucketStartTs + step, now) ?
+                        aggregationCache.get(entityId, key, aggregation, bucketStartTs, step) : null;
+                if (cached == null) {
+                    break;
+                }
+                keyBuckets.add(cached);
+            }
+            cachedCount = keyBuckets.size();
+            cachedBuckets.put(key, keyBuckets);
+        }
+        int foldedFrom = cachedCount;
+        long foldStartTs = aggregator.getStartTs() + foldedFrom * step;
+        ListenableFuture<List<List<Void>>> folded = foldStartTs < aggregator.getEndTs() ?
+                foldBuckets(tenantId, entityId, queries, aggregators, foldStartTs) : Futures.immediateFuture(Collections.emptyList());
+        return Futures.transform(folded, input -> {
+            Map<String, List<TsKvEntry>> data = new HashMap<>();
+            aggregators.forEach((key, keyAggregator) -> {
+                List<TsKvEntry> entries = new ArrayList<>();
+                cachedBuckets.get(key).stream().limit(foldedFrom).forEach(cached -> cached.ifPresent(entries::add));
+                for (int i = foldedFrom; i < keyAggregator.getBucketsCount(); i++) {
+                    long bucketStartTs = keyAggregator.getStartTs() + i * step;
+                    Optional<TsKvEntry> result = keyAggregator.getBucket(i);
+                    if (aggregationCache.isClosed(bucketStartTs + step, now)) {
+                        aggregationCache.put(entityId, key, aggregation, bucketStartTs, step, result, generations.get(key));
+                    }
+                    result.ifPresent(entries::add);
+                }
+                data.put(key, entries);
+            });
+            return data;
+        }, readResultsProcessingExecutor);
+    }
+
+    /**
+     * Folds rollups and raw points from <code>startTs</code>, which has to be an interval boundary, to the end of the query.
+     */
+    private ListenableFuture<List<List<Void>>> foldBuckets(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries,
+                                                           Map<String, TsKvBucketAggregator> aggregators, long startTs) {
+        TsKvBucketAggregator aggregator = aggregators.get(queries.get(0).getKey());
+        List<ListenableFuture<List<Void>>> futures = new ArrayList<>();
+        long rawStartTs = startTs;
+        long rawEndTs = aggregator.getEndTs();
+        TsRollupResolution resolution = rollupStore != null ? TsRollupResolution.forInterval(aggregator.getStartTs(), aggregator.getStep()) : null;
+        if (resolution != null) {
+            long rollupStartTs = Math.max(startTs, rollupStore.getReadableStartTs(resolution));
+            long rollupEndTs = Math.min(aggregator.getEndTs(), rollupStore.getReadableEndTs(resolution));
+            if (rollupStartTs < rollupEndTs) {
+                for (TsKvBucketAggregator keyAggregator : aggregators.values()) {
+                    futures.add(rollupStore.fold(tenantId, entityId, keyAggregator, resolution, rollupStartTs, rollupEndTs));
+                }
+                if (startTs < rollupStartTs) {
+                    futures.add(foldRawRows(tenantId, entityId, queries, aggregators, startTs, rollupStartTs));
+                }
+                rawStartTs = rollupEndTs;
+            }
+        }
+        if (rawStartTs < rawEndTs) {
+            futures.add(foldRawRows(tenantId, entityId, queries, aggregators, rawStartTs, rawEndTs));
+        }
+        return Futures.allAsList(futures);
+    }
+
+    private ListenableFuture<List<Void>> foldRawRows(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries, Map<String, TsKvBucketAggregator> aggregators, long startTs, long endTs) {
+        if (queries.size() == 1) {
+            ReadTsKvQuery query = queries.get(0);
+            TsKvBucketAggregator aggregator = aggregators.get(query.getKey());
+            return foldRawRows(tenantId, entityId, query, startTs, endTs, aggregator::processRow, aggregator::processEntry);
+        }
+        return foldMultiKeyRawRows(tenantId, entityId, new ArrayList<>(aggregators.keySet()), startTs, endTs, row -> {
+            TsKvBucketAggregator keyAggregator = aggregators.get(TsKvRowDecoder.of(row).getKey(row));
+            if (keyAggregator != null) {
+                keyAggregator.processRow(row);
+            }
+        }, entry -> {
+            TsKvBucketAggregator keyAggregator = aggregators.get(entry.getKey());
+            if (keyAggregator != null) {
+                keyAggregator.processEntry(entry);
+            }
+        });
+    }
+
+    /**
+     * @param entryConsumer receives the points of compacted partitions
+     */
+    private ListenableFuture<List<Void>> foldMultiKeyRawRows(TenantId tenantId, EntityId entityId, List<String> keys, long startTs, long endTs,
+                                                             Consumer<Row> rowConsumer, Consumer<TsKvEntry> entryConsumer) {
+        List<ListenableFuture<TsPartitioningSchedule>> partitioningFutures = keys.stream()
+                .map(key -> getPartitioning(tenantId, entityId, key))
+                .collect(Collectors.toList());
+        return Futures.transformAsync(Futures.allAsList(partitioningFutures), schedules -> {
+            Map<String, TsPartitioningSchedule> partitionings = new LinkedHashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                partitionings.put(keys.get(i), schedules.get(i));
+            }
+            return foldMultiKeyRawRows(tenantId, entityId, partitionings, startTs, endTs, rowConsumer, entryConsumer);
+        }, MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<Void>> foldMultiKeyRawRows(TenantId tenantId, EntityId entityId, Map<String, TsPartitioningSchedule> partitionings,
+                                                             long startTs, long endTs, Consumer<Row> rowConsumer, Consumer<TsKvEntry> entryConsumer) {
+        long minPartition = partitionings.values().stream().mapToLong(partitioning -> partitioning.toPartitionTs(startTs)).min().orElse(startTs);
+        long maxPartition = partitionings.values().stream().mapToLong(partitioning -> partitioning.toPartitionTs(endTs)).max().orElse(endTs);
+        ListenableFuture<List<Long>> partitionsListFuture = getPartitionsFuture(tenantId, entityId, partitionings, minPartition, maxPartition);
+        return Futures.transformAsync(partitionsListFuture, partitions -> {
+            PreparedStatement proto = getMultiKeyFetchStmt();
+            List<ListenableFuture<Void>> futures = new ArrayList<>(partitions.size());
+            for (Long partition : partitions) {
+                List<String> rawKeys = new ArrayList<>(partitionings.size());
+                for (Map.Entry<String, TsPartitioningSchedule> keyPartitioning : partitionings.entrySet()) {
+                    String key = keyPartitioning.getKey();
+                    if (isCompactedPartition(keyPartitioning.getValue(), partition)) {
+                        futures.add(compactor.foldCompactedPartition(tenantId, entityId, key, partition, startTs, endTs, entryConsumer));
+                    } else {
+                        rawKeys.add(key);
+                    }
+                }
+                if (rawKeys.isEmpty()) {
+                    continue;
+                }
+                BoundStatement stmt = proto.bind();
+                stmt.setString(0, entityId.getEntityType().name());
+                stmt.setUUID(1, entityId.getId());
+                stmt.setList(2, rawKeys);
+                stmt.setLong(3, partition);
+                stmt.setLong(4, startTs);
+                stmt.setLong(5, endTs);
+                futures.add(fetchAndFold(tenantId, entityId, stmt, rowConsumer));
+            }
+            return Futures.allAsList(futures);
+        }, readResultsProcessingExecutor);
+    }
+
+    /**
+     * @param entryConsumer receives the points of compacted partitions
+     */
+    ListenableFuture<List<Void>> foldRawRows(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, long startTs, long endTs,
+                                             Consumer<Row> rowConsumer, Consumer<TsKvEntry> entryConsumer) {
+        return Futures.transformAsync(getPartitioning(tenantId, entityId, query.getKey()),
+                partitioning -> foldRawRows(tenantId, entityId, query, partitioning, startTs, endTs, rowConsumer, entryConsumer), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<List<Void>> foldRawRows(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsPartitioningSchedule partitioning,
+                                                     long startTs, long endTs, Consumer<Row> rowConsumer, Consumer<TsKvEntry> entryConsumer) {
+        long minPartition = partitioning.toPartitionTs(startTs);
+        long maxPartition = partitioning.toPartitionTs(endTs);
+        ListenableFuture<List<Long>> partitionsListFuture = getPartitionsFuture(tenantId, query, entityId, partitioning, minPartition, maxPartition);
+        return Futures.transformAsync(partitionsListFuture, partitions -> {
+            PreparedStatement proto = getFetchStmt(Aggregation.NONE, ASC_ORDER);
+            List<ListenableFuture<Void>> futures = new ArrayList<>(partitions.size());
+            for (Long partition : partitions) {
+                if (isCompactedPartition(partitioning, partition)) {
+                    futures.add(compactor.foldCompactedPartition(tenantId, entityId, query.getKey(), partition, startTs, endTs, entryConsumer));
+                    continue;
+                }
+                BoundStatement stmt = proto.bind();
+                stmt.setString(0, entityId.getEntityType().name());
+                stmt.setUUID(1, entityId.getId());
+                stmt.setString(2, query.getKey());
+                stmt.setLong(3, partition);
+                stmt.setLong(4, startTs);
+                stmt.setLong(5, endTs);
+                stmt.setInt(6, Integer.MAX_VALUE);
+                futures.add(fetchAndFold(tenantId, entityId, stmt, rowConsumer));
+            }
+            return Futures.allAsList(futures);
+        }, readResultsProcessingExecutor);
+    }
+
+    ListenableFuture<Void> fetchAndFold(TenantId tenantId, EntityId entityId, BoundStatement stmt, Consumer<Row> rowConsumer) {
+        return fetchAndFold(tenantId, entityId, stmt, bucketedAggregationFetchSize, rowConsumer);
+    }
+
+    ListenableFuture<Void> fetchAndFold(TenantId tenantId, EntityId entityId, BoundStatement stmt, int fetchSize, Consumer<Row> rowConsumer) {
+        stmt.setFetchSize(fetchSize);
+        log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, entityId.getEntityType(), entityId.getId());
+        SettableFuture<Void> resultFuture = SettableFuture.create();
+        Futures.addCallback(executeAsyncRead(tenantId, stmt), getFoldCallback(entityId, rowConsumer, resultFuture), readResultsProcessingExecutor);
+        return resultFuture;
+    }
+
+    /**
+     * Consumes the rows that are already fetched and requests the next page only once they are folded,
+     * so at most one page per partition is held in memory.
+     */
+    private FutureCallback<ResultSet> getFoldCallback(EntityId entityId, Consumer<Row> rowConsumer, SettableFuture<Void> resultFuture) {
+        return new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(@Nullable ResultSet rs) {
+                if (rs == null) {
+                    resultFuture.set(null);
+                    return;
+                }
+                for (int available = rs.getAvailableWithoutFetching(); available > 0; available--) {
+                    rowConsumer.accept(rs.one());
+                }
+                if (rs.isFullyFetched()) {
+                    resultFuture.set(null);
+                } else {
+                    Futures.addCallback(rs.fetchMoreResults(), this, readResultsProcessingExecutor);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}][{}] Failed to fetch data for bucketed aggregation", entityId.getEntityType(), entityId.getId(), t);
+                resultFuture.setException(t);
+            }
+        };
+    }
+
     private Function<ResultSet, List<Long>> getPartitionsArrayFunction() {
         return rows -> rows.all().stream()
                 .map(row -> row.getLong(ModelConstants.PARTITION_COLUMN)).collect(Collectors.toList());
@@ -276,33 +1161,250 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
 
     @Override
     public ListenableFuture<TsKvEntry> findLatest(TenantId tenantId, EntityId entityId, String key) {
+        if (latestCache != null) {
+            TsKvEntry cached = latestCache.get(entityId, key);
+            if (cached != null) {
+                return Futures.immediateFuture(cached);
+            }
+        }
+        long generation = latestCache != null ? latestCache.getGeneration(entityId) : 0;
         BoundStatement stmt = getFindLatestStmt().bind();
         stmt.setString(0, entityId.getEntityType().name());
         stmt.setUUID(1, entityId.getId());
         stmt.setString(2, key);
         log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, entityId.getEntityType(), entityId.getId());
-        return getFuture(executeAsyncRead(tenantId, stmt), rs -> convertResultToTsKvEntry(key, rs.one()));
+        return getFuture(executeAsyncRead(tenantId, stmt), rs -> {
+            Row row = rs.one();
+            TsKvEntry entry = convertResultToTsKvEntry(key, row);
+            if (latestCache != null && row != null) {
+                latestCache.put(entityId, entry, generation);
+            }
+            return entry;
+        });
+    }
+
+    @Override
+    public ListenableFuture<Map<EntityId, List<TsKvEntry>>> findLatest(TenantId tenantId, Collection<EntityId> entityIds, Collection<String> keys) {
+        List<EntityId> entities = new ArrayList<>(new LinkedHashSet<>(entityIds));
+        List<String> keyList = new ArrayList<>(keys);
+        ListenableFuture<List<List<TsKvEntry>>> future = TsBoundedAsyncRunner.run(entities, latestBulkParallelism,
+                entityId -> findLatestByKeys(tenantId, entityId, keyList), readResultsProcessingExecutor);
+        return Futures.transform(future, results -> {
+            Map<EntityId, List<TsKvEntry>> latest = new LinkedHashMap<>();
+            for (int i = 0; i < entities.size(); i++) {
+                latest.put(entities.get(i), results.get(i));
+            }
+            return latest;
+        }, readResultsProcessingExecutor);
+    }
+
+    /**
+     * Reads the latest values of several keys of one entity with a single query to its latest partition.
+     * Keys without a value are returned with a null value, the same as {@link #findLatest(TenantId, EntityId, String)}.
+     */
+    private ListenableFuture<List<TsKvEntry>> findLatestByKeys(TenantId tenantId, EntityId entityId, List<String> keys) {
+        Map<String, TsKvEntry> found = new HashMap<>();
+        List<String> missing = keys;
+        if (latestCache != null) {
+            missing = new ArrayList<>();
+            for (String key : keys) {
+                TsKvEntry cached = latestCache.get(entityId, key);
+                if (cached != null) {
+                    found.put(key, cached);
+                } else {
+                    missing.add(key);
+                }
+            }
+        }
+        if (missing.isEmpty()) {
+            return Futures.immediateFuture(toLatestList(keys, found));
+        }
+        long generation = latestCache != null ? latestCache.getGeneration(entityId) : 0;
+        BoundStatement stmt = getFindLatestByKeysStmt().bind();
+        stmt.setString(0, entityId.getEntityType().name());
+        stmt.setUUID(1, entityId.getId());
+        stmt.setList(2, new ArrayList<>(new LinkedHashSet<>(missing)));
+        log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, entityId.getEntityType(), entityId.getId());
+        return getFuture(executeAsyncRead(tenantId, stmt), rs -> {
+            List<TsKvEntry> entries = convertResultToTsKvEntryList(rs.all());
+            for (TsKvEntry entry : entries) {
+                found.put(entry.getKey(), entry);
+                if (latestCache != null) {
+                    latestCache.put(entityId, entry, generation);
+                }
+            }
+            return toLatestList(keys, found);
+        });
+    }
+
+    private List<TsKvEntry> toLatestList(List<String> keys, Map<String, TsKvEntry> found) {
+        List<TsKvEntry> entries = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            TsKvEntry entry = found.get(key);
+            entries.add(entry != null ? entry : convertResultToTsKvEntry(key, null));
+        }
+        return entries;
     }
 
     @Override
     public ListenableFuture<List<TsKvEntry>> findAllLatest(TenantId tenantId, EntityId entityId) {
+        if (latestCache != null) {
+            List<TsKvEntry> cached = latestCache.getAll(entityId);
+            if (cached != null) {
+                return Futures.immediateFuture(cached);
+            }
+        }
+        long generation = latestCache != null ? latestCache.getGeneration(entityId) : 0;
         BoundStatement stmt = getFindAllLatestStmt().bind();
         stmt.setString(0, entityId.getEntityType().name());
         stmt.setUUID(1, entityId.getId());
         log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, entityId.getEntityType(), entityId.getId());
-        return getFuture(executeAsyncRead(tenantId, stmt), rs -> convertResultToTsKvEntryList(rs.all()));
+        return getFuture(executeAsyncRead(tenantId, stmt), rs -> {
+            List<TsKvEntry> entries = convertResultToTsKvEntryList(rs.all());
+            if (latestCache != null) {
+                latestCache.putAll(entityId, entries, generation);
+            }
+            return entries;
+        });
     }
 
     @Override
     public ListenableFuture<Void> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
+        long computedTtl = computeTtl(ttl);
+        return Futures.transformAsync(getWritePartitioning(tenantId, entityId, tsKvEntry.getKey()),
+                partitioning -> save(tenantId, entityId, tsKvEntry, computedTtl, partitioning.toPartitionTs(tsKvEntry.getTs())), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl, long partition) {
         List<ListenableFuture<Void>> futures = new ArrayList<>();
-        ttl = computeTtl(ttl);
-        long partition = toPartitionTs(tsKvEntry.getTs());
+        ListenableFuture<Void> journaled = appendToJournal(TsJournalRecord.save(tenantId, entityId, tsKvEntry, partition, ttl));
+        if (journaled != null) {
+            futures.add(journaled);
+        } else {
+            BoundStatement stmt = getSaveBoundStmt(entityId, tsKvEntry, ttl, partition);
+            List<TsKvEntry> entries = Collections.singletonList(tsKvEntry);
+            futures.add(addRollupsOnSave(tenantId, entityId, entries, ttl,
+                    invalidateAggregatesOnSave(entityId, entries, getFuture(executeAsyncWrite(tenantId, stmt), rs -> null))));
+        }
+        addCompactionCandidate(tenantId, entityId, tsKvEntry.getKey(), partition);
+        return Futures.transform(Futures.allAsList(futures), result -> null);
+    }
+
+    /**
+     * Groups entries by Cassandra partition (key and ts partition, the entity being the same for all entries)
+     * and writes every group with UNLOGGED batches of at most
+     * <code>cassandra.query.ts_batch_writes.max_size</code> statements.
+     */
+    @Override
+    public List<ListenableFuture<Void>> save(TenantId tenantId, EntityId entityId, List<TsKvEntry> tsKvEntries, long ttl) {
+        if (!batchWritesEnabled || tsKvEntries.size() < 2 || journalDrainer != null) {
+            return tsKvEntries.stream().map(tsKvEntry -> save(tenantId, entityId, tsKvEntry, ttl)).collect(Collectors.toList());
+        }
+        long computedTtl = computeTtl(ttl);
+        List<String> keys = tsKvEntries.stream().map(TsKvEntry::getKey).distinct().collect(Collectors.toList());
+        List<ListenableFuture<TsPartitioningSchedule>> partitioningFutures = keys.stream()
+                .map(key -> getWritePartitioning(tenantId, entityId, key))
+                .collect(Collectors.toList());
+        ListenableFuture<List<ListenableFuture<Void>>> batchesFuture = Futures.transform(Futures.allAsList(partitioningFutures), schedules -> {
+            Map<String, TsPartitioningSchedule> partitionings = new HashMap<>();
+            for (int i = 0; i < keys.size(); i++) {
+                partitionings.put(keys.get(i), schedules.get(i));
+            }
+            return saveBatches(tenantId, entityId, tsKvEntries, computedTtl, partitionings);
+        }, MoreExecutors.directExecutor());
+        List<ListenableFuture<Void>> futures = new ArrayList<>(tsKvEntries.size());
+        for (int i = 0; i < tsKvEntries.size(); i++) {
+            int index = i;
+            futures.add(Futures.transformAsync(batchesFuture, batches -> batches.get(index), MoreExecutors.directExecutor()));
+        }
+        return futures;
+    }
+
+    /**
+     * @return the future of the batch of every entry
+     */
+    private List<ListenableFuture<Void>> saveBatches(TenantId tenantId, EntityId entityId, List<TsKvEntry> tsKvEntries, long computedTtl,
+                                                     Map<String, TsPartitioningSchedule> partitionings) {
+        int entriesPerBatch = Math.max(1, batchWritesMaxSize);
+
+        Map<String, Map<Long, List<Integer>>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < tsKvEntries.size(); i++) {
+            TsKvEntry tsKvEntry = tsKvEntries.get(i);
+            groups.computeIfAbsent(tsKvEntry.getKey(), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(partitionings.get(tsKvEntry.getKey()).toPartitionTs(tsKvEntry.getTs()), p -> new ArrayList<>())
+                    .add(i);
+        }
+
+        List<ListenableFuture<Void>> futures = new ArrayList<>(Collections.nCopies(tsKvEntries.size(), null));
+        groups.values().forEach(partitions -> partitions.forEach((partition, indexes) -> {
+            for (int from = 0; from < indexes.size(); from += entriesPerBatch) {
+                List<Integer> chunk = indexes.subList(from, Math.min(from + entriesPerBatch, indexes.size()));
+                BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                for (Integer index : chunk) {
+                    TsKvEntry tsKvEntry = tsKvEntries.get(index);
+                    batch.add(getSaveBoundStmt(entityId, tsKvEntry, computedTtl, partition));
+                }
+                List<TsKvEntry> chunkEntries = chunk.stream().map(tsKvEntries::get).collect(Collectors.toList());
+                ListenableFuture<Void> batchFuture = addRollupsOnSave(tenantId, entityId, chunkEntries, computedTtl,
+                        invalidateAggregatesOnSave(entityId, chunkEntries, getFuture(executeAsyncWrite(tenantId, batch), rs -> null)));
+                chunk.forEach(index -> futures.set(index, batchFuture));
+                addCompactionCandidate(tenantId, entityId, tsKvEntries.get(chunk.get(0)).getKey(), partition);
+            }
+        }));
+        return futures;
+    }
+
+    private ListenableFuture<Void> addRollupsOnSave(TenantId tenantId, EntityId entityId, List<TsKvEntry> entries, long ttl,
+                                                    ListenableFuture<Void> writeFuture) {
+        if (rollupStore == null) {
+            return writeFuture;
+        }
+        return rollupStore.addOnSave(tenantId, entityId, entries, ttl, writeFuture);
+    }
+
+    /**
+     * Drops cached aggregates of the entries once their write completed. A failed write is treated the same,
+     * as a timed out write may still have been applied.
+     */
+    private ListenableFuture<Void> invalidateAggregatesOnSave(EntityId entityId, List<TsKvEntry> entries, ListenableFuture<Void> writeFuture) {
+        if (aggregationCache == null) {
+            return writeFuture;
+        }
+        SettableFuture<Void> resultFuture = SettableFuture.create();
+        Futures.addCallback(writeFuture, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+                invalidateAggregates();
+                resultFuture.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                invalidateAggregates();
+                resultFuture.setException(t);
+            }
+
+            private void invalidateAggregates() {
+                long now = System.currentTimeMillis();
+                entries.forEach(entry -> aggregationCache.onSave(entityId, entry.getKey(), entry.getTs(), now));
+            }
+        }, readResultsProcessingExecutor);
+        return resultFuture;
+    }
+
+    /**
+     * With <code>cassandra.query.set_null_values_enabled</code> the same single INSERT also nulls the other value columns,
+     * so a value that changed its type does not leave the previous value behind.
+     */
+    private BoundStatement getSaveBoundStmt(EntityId entityId, TsKvEntry tsKvEntry, long ttl, long partition) {
         DataType type = tsKvEntry.getDataType();
+        PreparedStatement proto;
         if (setNullValuesEnabled) {
-            processSetNullValues(tenantId, entityId, tsKvEntry, ttl, futures, partition, type);
+            proto = ttl == 0 ? getSaveWithNullsStmt(type) : getSaveWithNullsTtlStmt(type);
+        } else {
+            proto = ttl == 0 ? getSaveStmt(type) : getSaveTtlStmt(type);
         }
-        BoundStatement stmt = (ttl == 0 ? getSaveStmt(type) : getSaveTtlStmt(type)).bind();
+        BoundStatement stmt = proto.bind();
         stmt.setString(0, entityId.getEntityType().name())
                 .setUUID(1, entityId.getId())
                 .setString(2, tsKvEntry.getKey())
@@ -312,56 +1414,53 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         if (ttl > 0) {
             stmt.setInt(6, (int) ttl);
         }
-        futures.add(getFuture(executeAsyncWrite(tenantId, stmt), rs -> null));
-        return Futures.transform(Futures.allAsList(futures), result -> null);
+        return stmt;
     }
 
-    private void processSetNullValues(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl, List<ListenableFuture<Void>> futures, long partition, DataType type) {
-        switch (type) {
-            case LONG:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
-                break;
-            case BOOLEAN:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
-                break;
-            case DOUBLE:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.STRING));
-                break;
-            case STRING:
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.BOOLEAN));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.DOUBLE));
-                futures.add(saveNull(tenantId, entityId, tsKvEntry, ttl, partition, DataType.LONG));
-                break;
+    @Override
+    public ListenableFuture<Void> savePartition(TenantId tenantId, EntityId entityId, long tsKvEntryTs, String key, long ttl) {
+        if (isFixedPartitioning()) {
+            return Futures.immediateFuture(null);
         }
+        long computedTtl = computeTtl(ttl);
+        return Futures.transformAsync(getWritePartitioning(tenantId, entityId, key),
+                partitioning -> savePartition(tenantId, entityId, key, partitioning.toPartitionTs(tsKvEntryTs), computedTtl), MoreExecutors.directExecutor());
     }
 
-    private ListenableFuture<Void> saveNull(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl, long partition, DataType type) {
-        BoundStatement stmt = (ttl == 0 ? getSaveStmt(type) : getSaveTtlStmt(type)).bind();
-        stmt.setString(0, entityId.getEntityType().name())
-                .setUUID(1, entityId.getId())
-                .setString(2, tsKvEntry.getKey())
-                .setLong(3, partition)
-                .setLong(4, tsKvEntry.getTs());
-        stmt.setToNull(getColumnName(type));
-        if (ttl > 0) {
-            stmt.setInt(6, (int) ttl);
+    private ListenableFuture<Void> savePartition(TenantId tenantId, EntityId entityId, String key, long partition, long ttl) {
+        if (partitionsCache != null) {
+            partitionsCache.add(entityId, key, partition);
         }
-        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
-    }
+        if (partitionWriteFilter != null) {
+            if (!partitionWriteFilter.record(entityId, key, partition, System.currentTimeMillis())) {
+                return Futures.immediateFuture(null);
+            }
+            if (ttl > 0) {
+                // the partition row must outlive data points written until the next refresh
+                ttl += TimeUnit.MILLISECONDS.toSeconds(partitionWriteFilter.getRefreshMs());
+            }
+        }
+        ListenableFuture<Void> journaled = appendToJournal(TsJournalRecord.savePartition(tenantId, entityId, partition, key, ttl));
+        if (journaled != null) {
+            return journaled;
+        }
+        ListenableFuture<Void> future = writePartition(tenantId, entityId, partition, key, ttl);
+        if (partitionWriteFilter != null) {
+            Futures.addCallback(future, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
+                }
 
-    @Override
-    public ListenableFuture<Void> savePartition(TenantId tenantId, EntityId entityId, long tsKvEntryTs, String key, long ttl) {
-        if (isFixedPartitioning()) {
-            return Futures.immediateFuture(null);
+                @Override
+                public void onFailure(Throwable t) {
+                    partitionWriteFilter.forget(entityId, key, partition);
+                }
+            }, readResultsProcessingExecutor);
         }
-        ttl = computeTtl(ttl);
-        long partition = toPartitionTs(tsKvEntryTs);
+        return future;
+    }
+
+    private ListenableFuture<Void> writePartition(TenantId tenantId, EntityId entityId, long partition, String key, long ttl) {
         log.debug("Saving partition {} for the entity [{}-{}] and key {}", partition, entityId.getEntityType(), entityId.getId(), key);
         BoundStatement stmt = (ttl == 0 ? getPartitionInsertStmt() : getPartitionInsertTtlStmt()).bind();
         stmt = stmt.setString(0, entityId.getEntityType().name())
@@ -374,7 +1473,7 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
     }
 
-    private long computeTtl(long ttl) {
+    long computeTtl(long ttl) {
         if (systemTtl > 0) {
             if (ttl == 0) {
                 ttl = systemTtl;
@@ -387,7 +1486,79 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
 
     @Override
     public ListenableFuture<Void> saveLatest(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
-        BoundStatement stmt = getLatestStmt().bind()
+        if (latestCache != null) {
+            latestCache.update(entityId, tsKvEntry);
+        }
+        if (latestWriteBuffer != null && latestWriteBuffer.offer(tenantId, entityId, tsKvEntry)) {
+            if (latestWriteBuffer.getPendingCount() >= latestWriteBehindFlushThreshold && latestFlushScheduled.compareAndSet(false, true)) {
+                latestFlushExecutor.submit(this::flushLatest);
+            }
+            return Futures.immediateFuture(null);
+        }
+        ListenableFuture<Void> journaled = appendToJournal(TsJournalRecord.saveLatest(tenantId, entityId, tsKvEntry));
+        if (journaled != null) {
+            return journaled;
+        }
+        return writeLatest(tenantId, entityId, tsKvEntry);
+    }
+
+    private ListenableFuture<Void> appendToJournal(TsJournalRecord record) {
+        return journalDrainer != null ? journalDrainer.append(record) : null;
+    }
+
+    /**
+     * Executes a record replayed from the journal.
+     */
+    private ListenableFuture<Void> writeJournalRecord(TsJournalRecord record) {
+        switch (record.getType()) {
+            case SAVE:
+                BoundStatement stmt = getSaveBoundStmt(record.getEntityId(), record.getEntry(), record.getTtl(), record.getPartition());
+                List<TsKvEntry> entries = Collections.singletonList(record.getEntry());
+                return addRollupsOnSave(record.getTenantId(), record.getEntityId(), entries, record.getTtl(),
+                        invalidateAggregatesOnSave(record.getEntityId(), entries, getFuture(executeAsyncWrite(record.getTenantId(), stmt), rs -> null)));
+            case SAVE_LATEST:
+                return writeLatest(record.getTenantId(), record.getEntityId(), record.getEntry());
+            default:
+                return writePartition(record.getTenantId(), record.getEntityId(), record.getPartition(), record.getKey(), record.getTtl());
+        }
+    }
+
+    private ListenableFuture<List<Void>> flushLatest() {
+        latestFlushScheduled.set(false);
+        List<TsLatestWriteBuffer.LatestRecord> records = latestWriteBuffer.drain();
+        if (records.isEmpty()) {
+            return Futures.immediateFuture(Collections.emptyList());
+        }
+        log.trace("Flushing {} latest values", records.size());
+        List<ListenableFuture<Void>> futures = new ArrayList<>(records.size());
+        for (TsLatestWriteBuffer.LatestRecord record : records) {
+            ListenableFuture<Void> future = writeLatest(record.getTenantId(), record.getEntityId(), record.getEntry());
+            Futures.addCallback(future, new FutureCallback<Void>() {
+                @Override
+                public void onSuccess(@Nullable Void result) {
+                    latestWriteBuffer.onFlushed(record);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    log.warn("[{}] Failed to flush latest value of key {}, retrying with the next flush", record.getEntityId(), record.getEntry().getKey(), t);
+                    latestWriteBuffer.onFlushFailed(record);
+                }
+            }, readResultsProcessingExecutor);
+            futures.add(future);
+        }
+        return Futures.successfulAsList(futures);
+    }
+
+    private ListenableFuture<Void> writeLatest(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
+        return writeLatest(tenantId, entityId, tsKvEntry, toWriteTimeMicros(tsKvEntry.getTs()));
+    }
+
+    /**
+     * @param writeTimeMicros write timestamp of the row, only used if {@link #isLatestWrittenWithTs()}
+     */
+    private ListenableFuture<Void> writeLatest(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long writeTimeMicros) {
+        BoundStatement stmt = (isLatestWrittenWithTs() ? getLatestTimestampStmt() : getLatestStmt()).bind()
                 .setString(0, entityId.getEntityType().name())
                 .setUUID(1, entityId.getId())
                 .setString(2, tsKvEntry.getKey())
@@ -396,13 +1567,54 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
                 .set(5, tsKvEntry.getStrValue().orElse(null), String.class)
                 .set(6, tsKvEntry.getLongValue().orElse(null), Long.class)
                 .set(7, tsKvEntry.getDoubleValue().orElse(null), Double.class);
-        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
+        if (isLatestWrittenWithTs()) {
+            stmt.setLong(8, writeTimeMicros);
+        }
+        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> {
+            if (latestCache != null) {
+                latestCache.onWritten(entityId);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Buffered and journaled latest values are written after values saved later may already have been written
+     * directly, so the row is written with the ts of its value as write timestamp and the value with the newest ts wins.
+     * Enabling the write-behind buffer or the journal therefore changes the latest value from the last written one to
+     * the one with the newest ts. Rows written before carry the server clock as write timestamp and are only replaced
+     * by values with a newer ts than the time they were written at; disabling both again makes any later write win.
+     */
+    private boolean isLatestWrittenWithTs() {
+        return latestWriteBuffer != null || journalDrainer != null;
+    }
+
+    /**
+     * Caps the ts at <code>cassandra.query.ts_latest_max_future_ms</code> ahead of the clock, so a value with a
+     * future ts does not keep the row from being updated until that time.
+     */
+    private long toWriteTimeMicros(long ts) {
+        return TimeUnit.MILLISECONDS.toMicros(Math.min(ts, System.currentTimeMillis() + latestMaxFutureMs));
     }
 
     @Override
     public ListenableFuture<Void> remove(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
-        long minPartition = toPartitionTs(query.getStartTs());
-        long maxPartition = toPartitionTs(query.getEndTs());
+        if (aggregationCache != null) {
+            aggregationCache.invalidate(entityId, query.getKey(), query.getStartTs(), query.getEndTs());
+        }
+        ListenableFuture<Void> removeFuture = Futures.transformAsync(getPartitioning(tenantId, entityId, query.getKey()),
+                partitioning -> remove(tenantId, entityId, query, partitioning), MoreExecutors.directExecutor());
+        if (aggregationCache != null) {
+            // drops results of reads that overlapped the delete, registered first so it runs before the callers' listeners
+            removeFuture.addListener(() -> aggregationCache.invalidate(entityId, query.getKey(), query.getStartTs(), query.getEndTs()),
+                    MoreExecutors.directExecutor());
+        }
+        return removeFuture;
+    }
+
+    private ListenableFuture<Void> remove(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query, TsPartitioningSchedule partitioning) {
+        long minPartition = partitioning.toPartitionTs(query.getStartTs());
+        long maxPartition = partitioning.toPartitionTs(query.getEndTs());
 
         ResultSetFuture partitionsFuture = fetchPartitions(tenantId, entityId, query.getKey(), minPartition, maxPartition);
 
@@ -412,6 +1624,21 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         Futures.addCallback(partitionsListFuture, new FutureCallback<List<Long>>() {
             @Override
             public void onSuccess(@Nullable List<Long> partitions) {
+                if (deleteParallelism > 0) {
+                    Futures.addCallback(deletePartitionsAsync(tenantId, entityId, query, partitioning, partitions), new FutureCallback<Void>() {
+                        @Override
+                        public void onSuccess(@Nullable Void result) {
+                            resultFuture.set(null);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            log.error("[{}][{}] Failed to delete data for query {}-{}", entityId.getEntityType(), entityId.getId(), query.getStartTs(), query.getEndTs(), t);
+                            resultFuture.setException(t);
+                        }
+                    }, readResultsProcessingExecutor);
+                    return;
+                }
                 QueryCursor cursor = new QueryCursor(entityId.getEntityType().name(), entityId.getId(), query, partitions);
                 deleteAsync(tenantId, cursor, resultFuture);
             }
@@ -421,6 +1648,19 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
                 log.error("[{}][{}] Failed to fetch partitions for interval {}-{}", entityId.getEntityType().name(), entityId.getId(), minPartition, maxPartition, t);
             }
         }, readResultsProcessingExecutor);
+        List<ListenableFuture<?>> futures = new ArrayList<>();
+        futures.add(resultFuture);
+        if (rollupStore != null) {
+            futures.add(Futures.transformAsync(partitionsListFuture, partitions -> rollupStore.remove(tenantId, entityId, query, partitioning, partitions),
+                    readResultsProcessingExecutor));
+        }
+        if (compactor != null) {
+            futures.add(Futures.transformAsync(partitionsListFuture, partitions -> compactor.removeFromBlocks(tenantId, entityId, query, partitioning, partitions),
+                    readResultsProcessingExecutor));
+        }
+        if (futures.size() > 1) {
+            return Futures.transform(Futures.allAsList(futures), result -> null, readResultsProcessingExecutor);
+        }
         return resultFuture;
     }
 
@@ -451,6 +1691,49 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         }
     }
 
+    /**
+     * Drops the partitions that lie completely inside the deleted range with a single partition tombstone and only
+     * writes range tombstones to the partitions at the edges of the range. Partitions are deleted concurrently.
+     */
+    private ListenableFuture<Void> deletePartitionsAsync(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query, TsPartitioningSchedule partitioning,
+                                                         List<Long> partitions) {
+        ListenableFuture<List<ResultSet>> future = TsBoundedAsyncRunner.run(partitions, deleteParallelism, partition -> {
+            BoundStatement stmt;
+            if (query.getStartTs() < partition && partitioning.toNextPartitionTs(partition) - 1 <= query.getEndTs()) {
+                stmt = getDropPartitionStmt().bind();
+                stmt.setString(0, entityId.getEntityType().name());
+                stmt.setUUID(1, entityId.getId());
+                stmt.setString(2, query.getKey());
+                stmt.setLong(3, partition);
+            } else {
+                stmt = getDeleteStmt().bind();
+                stmt.setString(0, entityId.getEntityType().name());
+                stmt.setUUID(1, entityId.getId());
+                stmt.setString(2, query.getKey());
+                stmt.setLong(3, partition);
+                stmt.setLong(4, query.getStartTs());
+                stmt.setLong(5, query.getEndTs());
+            }
+            return executeAsyncWrite(tenantId, stmt);
+        }, readResultsProcessingExecutor, (completed, total) -> {
+            if (deleteProgressLogInterval > 0 && completed % deleteProgressLogInterval == 0) {
+                log.info("[{}][{}] Deleted {} of {} partitions of key [{}]", entityId.getEntityType(), entityId.getId(), completed, total, query.getKey());
+            }
+        });
+        return Futures.transform(future, input -> null, readResultsProcessingExecutor);
+    }
+
+    private PreparedStatement getDropPartitionStmt() {
+        if (dropPartitionStmt == null) {
+            dropPartitionStmt = prepare("DELETE FROM " + ModelConstants.TS_KV_CF +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM);
+        }
+        return dropPartitionStmt;
+    }
+
     private PreparedStatement getDeleteStmt() {
         if (deleteStmt == null) {
             deleteStmt = prepare("DELETE FROM " + ModelConstants.TS_KV_CF +
@@ -466,69 +1749,95 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
 
     @Override
     public ListenableFuture<Void> removeLatest(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
-        ListenableFuture<TsKvEntry> latestEntryFuture = findLatest(tenantId, entityId, query.getKey());
+        return removeLatest(tenantId, entityId, Collections.singletonList(query));
+    }
 
-        ListenableFuture<Boolean> booleanFuture = Futures.transform(latestEntryFuture, latestEntry -> {
-            long ts = latestEntry.getTs();
-            if (ts > query.getStartTs() && ts <= query.getEndTs()) {
-                return true;
-            } else {
-                log.trace("Won't be deleted latest value for [{}], key - {}", entityId, query.getKey());
+    /**
+     * Reads the current latest values of all keys with one query and then deletes, and optionally rewrites,
+     * those that fall into the deleted range. No step blocks an executor thread.
+     */
+    @Override
+    public ListenableFuture<Void> removeLatest(TenantId tenantId, EntityId entityId, List<DeleteTsKvQuery> queries) {
+        List<String> keys = new ArrayList<>(queries.size());
+        for (DeleteTsKvQuery query : queries) {
+            if (latestWriteBuffer != null) {
+                latestWriteBuffer.remove(entityId, query.getKey(), query.getStartTs(), query.getEndTs());
             }
-            return false;
-        }, readResultsProcessingExecutor);
-
-        ListenableFuture<Void> removedLatestFuture = Futures.transformAsync(booleanFuture, isRemove -> {
-            if (isRemove) {
-                return deleteLatest(tenantId, entityId, query.getKey());
+            if (latestCache != null) {
+                latestCache.invalidate(entityId, query.getKey());
             }
-            return Futures.immediateFuture(null);
+            keys.add(query.getKey());
+        }
+        ListenableFuture<List<TsKvEntry>> latestEntriesFuture = findLatestByKeys(tenantId, entityId, keys);
+        ListenableFuture<List<Void>> removedLatestFuture = Futures.transformAsync(latestEntriesFuture, latestEntries -> {
+            List<ListenableFuture<Void>> futures = new ArrayList<>(queries.size());
+            for (int i = 0; i < queries.size(); i++) {
+                futures.add(removeLatest(tenantId, entityId, queries.get(i), latestEntries.get(i)));
+            }
+            return Futures.allAsList(futures);
         }, readResultsProcessingExecutor);
+        ListenableFuture<Void> resultFuture = Futures.transform(removedLatestFuture, input -> null, readResultsProcessingExecutor);
+        if (latestCache != null) {
+            resultFuture.addListener(() -> keys.forEach(key -> latestCache.invalidate(entityId, key)), readResultsProcessingExecutor);
+        }
+        return resultFuture;
+    }
 
-        final SimpleListenableFuture<Void> resultFuture = new SimpleListenableFuture<>();
-        Futures.addCallback(removedLatestFuture, new FutureCallback<Void>() {
-            @Override
-            public void onSuccess(@Nullable Void result) {
-                if (query.getRewriteLatestIfDeleted()) {
-                    ListenableFuture<Void> savedLatestFuture = Futures.transformAsync(booleanFuture, isRemove -> {
-                        if (isRemove) {
-                            return getNewLatestEntryFuture(tenantId, entityId, query);
-                        }
-                        return Futures.immediateFuture(null);
-                    }, readResultsProcessingExecutor);
-
-                    try {
-                        resultFuture.set(savedLatestFuture.get());
-                    } catch (InterruptedException | ExecutionException e) {
-                        log.warn("Could not get latest saved value for [{}], {}", entityId, query.getKey(), e);
-                    }
-                } else {
-                    resultFuture.set(null);
+    private ListenableFuture<Void> removeLatest(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query, TsKvEntry latestEntry) {
+        long ts = latestEntry.getTs();
+        if (ts <= query.getStartTs() || ts > query.getEndTs()) {
+            log.trace("Won't be deleted latest value for [{}], key - {}", entityId, query.getKey());
+            return Futures.immediateFuture(null);
+        }
+        if (isLatestWrittenWithTs()) {
+            return Futures.transformAsync(findLatestWriteTime(tenantId, entityId, query.getKey()), rowWriteTime -> {
+                // a delete with the write timestamp of the deleted value keeps newer values saved meanwhile, and the
+                // new latest value has to be written above that timestamp to not be shadowed by the delete. Rows
+                // written before the ts was used as write timestamp carry a later one, which the delete has to cover.
+                long deletedWriteTime = Math.max(toWriteTimeMicros(ts), rowWriteTime);
+                if (!query.getRewriteLatestIfDeleted()) {
+                    return deleteLatest(tenantId, entityId, query.getKey(), deletedWriteTime);
                 }
-            }
+                return Futures.transformAsync(findNewLatestEntry(tenantId, entityId, query), newLatest -> newLatest != null ?
+                                writeLatest(tenantId, entityId, newLatest, deletedWriteTime + 1) : deleteLatest(tenantId, entityId, query.getKey(), deletedWriteTime),
+                        readResultsProcessingExecutor);
+            }, readResultsProcessingExecutor);
+        }
+        ListenableFuture<Void> removedLatestFuture = deleteLatest(tenantId, entityId, query.getKey());
+        if (!query.getRewriteLatestIfDeleted()) {
+            return removedLatestFuture;
+        }
+        return Futures.transformAsync(removedLatestFuture, result -> getNewLatestEntryFuture(tenantId, entityId, query), readResultsProcessingExecutor);
+    }
 
-            @Override
-            public void onFailure(Throwable t) {
-                log.warn("[{}] Failed to process remove of the latest value", entityId, t);
+    /**
+     * Finds the newest value that was not deleted by walking the partitions backwards from the start of the deleted
+     * range, one partition at a time, until the first value is found.
+     */
+    private ListenableFuture<Void> getNewLatestEntryFuture(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
+        return Futures.transformAsync(findNewLatestEntry(tenantId, entityId, query), newLatest -> {
+            if (newLatest != null) {
+                return saveLatest(tenantId, entityId, newLatest);
             }
-        });
-        return resultFuture;
+            return Futures.immediateFuture(null);
+        }, readResultsProcessingExecutor);
     }
 
-    private ListenableFuture<Void> getNewLatestEntryFuture(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
+    /**
+     * @return the newest value before the deleted range or null if there is none
+     */
+    private ListenableFuture<TsKvEntry> findNewLatestEntry(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
         long startTs = 0;
-        long endTs = query.getStartTs() - 1;
+        long endTs = query.getStartTs();
         ReadTsKvQuery findNewLatestQuery = new BaseReadTsKvQuery(query.getKey(), startTs, endTs, endTs - startTs, 1,
                 Aggregation.NONE, DESC_ORDER);
-        ListenableFuture<List<TsKvEntry>> future = findAllAsync(tenantId, entityId, findNewLatestQuery);
-
-        return Futures.transformAsync(future, entryList -> {
+        ListenableFuture<List<TsKvEntry>> future = findAllAsyncWithLimit(tenantId, entityId, findNewLatestQuery, 0);
+        return Futures.transform(future, entryList -> {
             if (entryList.size() == 1) {
-                return saveLatest(tenantId, entityId, entryList.get(0));
-            } else {
-                log.trace("Could not find new latest value for [{}], key - {}", entityId, query.getKey());
+                return entryList.get(0);
             }
-            return Futures.immediateFuture(null);
+            log.trace("Could not find new latest value for [{}], key - {}", entityId, query.getKey());
+            return null;
         }, readResultsProcessingExecutor);
     }
 
@@ -541,16 +1850,48 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         return getFuture(executeAsyncWrite(tenantId, delete), rs -> null);
     }
 
+    /**
+     * @return the write timestamp of the latest row of the key or 0 if there is none
+     */
+    private ListenableFuture<Long> findLatestWriteTime(TenantId tenantId, EntityId entityId, String key) {
+        BoundStatement stmt = getLatestWriteTimeStmt().bind();
+        stmt.setString(0, entityId.getEntityType().name());
+        stmt.setUUID(1, entityId.getId());
+        stmt.setString(2, key);
+        log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, entityId.getEntityType(), entityId.getId());
+        return getFuture(executeAsyncRead(tenantId, stmt), rs -> {
+            Row row = rs.one();
+            return row == null || row.isNull(0) ? 0L : row.getLong(0);
+        });
+    }
+
+    private ListenableFuture<Void> deleteLatest(TenantId tenantId, EntityId entityId, String key, long writeTimeMicros) {
+        BoundStatement stmt = getLatestDeleteTimestampStmt().bind();
+        stmt.setLong(0, writeTimeMicros);
+        stmt.setString(1, entityId.getEntityType().name());
+        stmt.setUUID(2, entityId.getId());
+        stmt.setString(3, key);
+        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
+    }
+
     @Override
     public ListenableFuture<Void> removePartition(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query) {
-        long minPartition = toPartitionTs(query.getStartTs());
-        long maxPartition = toPartitionTs(query.getEndTs());
+        return Futures.transformAsync(getPartitioning(tenantId, entityId, query.getKey()),
+                partitioning -> removePartition(tenantId, entityId, query, partitioning), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> removePartition(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query, TsPartitioningSchedule partitioning) {
+        long minPartition = partitioning.toPartitionTs(query.getStartTs());
+        long maxPartition = partitioning.toPartitionTs(query.getEndTs());
         if (minPartition == maxPartition) {
             return Futures.immediateFuture(null);
         } else {
             ResultSetFuture partitionsFuture = fetchPartitions(tenantId, entityId, query.getKey(), minPartition, maxPartition);
 
             final SimpleListenableFuture<Void> resultFuture = new SimpleListenableFuture<>();
+            if (partitionsCache != null) {
+                resultFuture.addListener(() -> partitionsCache.invalidate(entityId, query.getKey()), readResultsProcessingExecutor);
+            }
             final ListenableFuture<List<Long>> partitionsListFuture = Futures.transform(partitionsFuture, getPartitionsArrayFunction(), readResultsProcessingExecutor);
 
             Futures.addCallback(partitionsListFuture, new FutureCallback<List<Long>>() {
@@ -564,6 +1905,9 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
                     for (int i = index; i < partitions.size() - 1; i++) {
                         partitionsToDelete.add(partitions.get(i));
                     }
+                    if (partitionWriteFilter != null) {
+                        partitionsToDelete.forEach(partition -> partitionWriteFilter.forget(entityId, query.getKey(), partition));
+                    }
                     QueryCursor cursor = new QueryCursor(entityId.getEntityType().name(), entityId.getId(), query, partitionsToDelete);
                     deletePartitionAsync(tenantId, cursor, resultFuture);
                 }
@@ -616,50 +1960,22 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
     private List<TsKvEntry> convertResultToTsKvEntryList(List<Row> rows) {
         List<TsKvEntry> entries = new ArrayList<>(rows.size());
         if (!rows.isEmpty()) {
-            rows.forEach(row -> entries.add(convertResultToTsKvEntry(row)));
+            TsKvRowDecoder decoder = TsKvRowDecoder.of(rows.get(0));
+            rows.forEach(row -> entries.add(decoder.toTsKvEntry(row)));
         }
         return entries;
     }
 
     private TsKvEntry convertResultToTsKvEntry(String key, Row row) {
         if (row != null) {
-            long ts = row.getLong(ModelConstants.TS_COLUMN);
-            return new BasicTsKvEntry(ts, toKvEntry(row, key));
+            return TsKvRowDecoder.of(row).toTsKvEntry(row, key);
         } else {
             return new BasicTsKvEntry(System.currentTimeMillis(), new StringDataEntry(key, null));
         }
     }
 
-    private TsKvEntry convertResultToTsKvEntry(Row row) {
-        String key = row.getString(ModelConstants.KEY_COLUMN);
-        long ts = row.getLong(ModelConstants.TS_COLUMN);
-        return new BasicTsKvEntry(ts, toKvEntry(row, key));
-    }
-
     public static KvEntry toKvEntry(Row row, String key) {
-        KvEntry kvEntry = null;
-        String strV = row.get(ModelConstants.STRING_VALUE_COLUMN, String.class);
-        if (strV != null) {
-            kvEntry = new StringDataEntry(key, strV);
-        } else {
-            Long longV = row.get(ModelConstants.LONG_VALUE_COLUMN, Long.class);
-            if (longV != null) {
-                kvEntry = new LongDataEntry(key, longV);
-            } else {
-                Double doubleV = row.get(ModelConstants.DOUBLE_VALUE_COLUMN, Double.class);
-                if (doubleV != null) {
-                    kvEntry = new DoubleDataEntry(key, doubleV);
-                } else {
-                    Boolean boolV = row.get(ModelConstants.BOOLEAN_VALUE_COLUMN, Boolean.class);
-                    if (boolV != null) {
-                        kvEntry = new BooleanDataEntry(key, boolV);
-                    } else {
-                        log.warn("All values in key-value row are nullable ");
-                    }
-                }
-            }
-        }
-        return kvEntry;
+        return TsKvRowDecoder.of(row).toKvEntry(row, key);
     }
 
     /**
@@ -708,7 +2024,46 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         return saveTtlStmts[dataType.ordinal()];
     }
 
-    private PreparedStatement getFetchStmt(Aggregation aggType, String orderBy) {
+    private PreparedStatement getSaveWithNullsStmt(DataType dataType) {
+        if (saveWithNullsStmts == null) {
+            saveWithNullsStmts = new PreparedStatement[DataType.values().length];
+            for (DataType type : DataType.values()) {
+                saveWithNullsStmts[type.ordinal()] = prepare(getSaveWithNullsQuery(type));
+            }
+        }
+        return saveWithNullsStmts[dataType.ordinal()];
+    }
+
+    private PreparedStatement getSaveWithNullsTtlStmt(DataType dataType) {
+        if (saveWithNullsTtlStmts == null) {
+            saveWithNullsTtlStmts = new PreparedStatement[DataType.values().length];
+            for (DataType type : DataType.values()) {
+                saveWithNullsTtlStmts[type.ordinal()] = prepare(getSaveWithNullsQuery(type) + " USING TTL ?");
+            }
+        }
+        return saveWithNullsTtlStmts[dataType.ordinal()];
+    }
+
+    private static String getSaveWithNullsQuery(DataType type) {
+        StringBuilder nullColumns = new StringBuilder();
+        StringBuilder nullValues = new StringBuilder();
+        for (DataType nullType : DataType.values()) {
+            if (nullType != type) {
+                nullColumns.append(",").append(getColumnName(nullType));
+                nullValues.append(", null");
+            }
+        }
+        return INSERT_INTO + ModelConstants.TS_KV_CF +
+                "(" + ModelConstants.ENTITY_TYPE_COLUMN +
+                "," + ModelConstants.ENTITY_ID_COLUMN +
+                "," + ModelConstants.KEY_COLUMN +
+                "," + ModelConstants.PARTITION_COLUMN +
+                "," + ModelConstants.TS_COLUMN +
+                "," + getColumnName(type) + nullColumns + ")" +
+                " VALUES(?, ?, ?, ?, ?, ?" + nullValues + ")";
+    }
+
+    PreparedStatement getFetchStmt(Aggregation aggType, String orderBy) {
         switch (orderBy) {
             case ASC_ORDER:
                 if (fetchStmtsAsc == null) {
@@ -763,6 +2118,41 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         return latestInsertStmt;
     }
 
+    private PreparedStatement getLatestTimestampStmt() {
+        if (latestInsertTimestampStmt == null) {
+            latestInsertTimestampStmt = prepare(INSERT_INTO + ModelConstants.TS_KV_LATEST_CF +
+                    "(" + ModelConstants.ENTITY_TYPE_COLUMN +
+                    "," + ModelConstants.ENTITY_ID_COLUMN +
+                    "," + ModelConstants.KEY_COLUMN +
+                    "," + ModelConstants.TS_COLUMN +
+                    "," + ModelConstants.BOOLEAN_VALUE_COLUMN +
+                    "," + ModelConstants.STRING_VALUE_COLUMN +
+                    "," + ModelConstants.LONG_VALUE_COLUMN +
+                    "," + ModelConstants.DOUBLE_VALUE_COLUMN + ")" +
+                    " VALUES(?, ?, ?, ?, ?, ?, ?, ?) USING TIMESTAMP ?");
+        }
+        return latestInsertTimestampStmt;
+    }
+
+    private PreparedStatement getLatestDeleteTimestampStmt() {
+        if (latestDeleteTimestampStmt == null) {
+            latestDeleteTimestampStmt = prepare("DELETE FROM " + ModelConstants.TS_KV_LATEST_CF + " USING TIMESTAMP ?" +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM);
+        }
+        return latestDeleteTimestampStmt;
+    }
+
+    private PreparedStatement getLatestWriteTimeStmt() {
+        if (latestWriteTimeStmt == null) {
+            latestWriteTimeStmt = prepare(SELECT_PREFIX + "WRITETIME(" + ModelConstants.TS_COLUMN + ") FROM " + ModelConstants.TS_KV_LATEST_CF
+                    + " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM);
+        }
+        return latestWriteTimeStmt;
+    }
 
     private PreparedStatement getPartitionInsertStmt() {
         if (partitionInsertStmt == null) {
@@ -788,6 +2178,44 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         return partitionInsertTtlStmt;
     }
 
+    private PreparedStatement getMultiKeyFetchStmt() {
+        if (multiKeyFetchStmt == null) {
+            multiKeyFetchStmt = prepare(SELECT_PREFIX +
+                    String.join(", ", ModelConstants.getFetchColumnNames(Aggregation.NONE)) + " FROM " + ModelConstants.TS_KV_CF
+                    + " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + " IN ? "
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.TS_COLUMN + " > ? "
+                    + "AND " + ModelConstants.TS_COLUMN + " <= ?");
+        }
+        return multiKeyFetchStmt;
+    }
+
+    private PreparedStatement getPartitioningInsertStmt() {
+        if (partitioningInsertStmt == null) {
+            partitioningInsertStmt = prepare(INSERT_INTO + TsPartitioningSchedule.TS_KV_PARTITIONING_CF +
+                    "(" + ModelConstants.ENTITY_TYPE_COLUMN +
+                    "," + ModelConstants.ENTITY_ID_COLUMN +
+                    "," + ModelConstants.KEY_COLUMN +
+                    "," + TsPartitioningSchedule.SINCE_TS_COLUMN +
+                    "," + TsPartitioningSchedule.PARTITIONING_COLUMN + ")" +
+                    " VALUES(?, ?, ?, ?, ?)");
+        }
+        return partitioningInsertStmt;
+    }
+
+    private PreparedStatement getPartitioningFetchStmt() {
+        if (partitioningFetchStmt == null) {
+            partitioningFetchStmt = prepare(SELECT_PREFIX +
+                    TsPartitioningSchedule.SINCE_TS_COLUMN + "," + TsPartitioningSchedule.PARTITIONING_COLUMN + " " +
+                    "FROM " + TsPartitioningSchedule.TS_KV_PARTITIONING_CF + " " +
+                    "WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM);
+        }
+        return partitioningFetchStmt;
+    }
 
     private PreparedStatement getFindLatestStmt() {
         if (findLatestStmt == null) {
@@ -806,6 +2234,23 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         return findLatestStmt;
     }
 
+    private PreparedStatement getFindLatestByKeysStmt() {
+        if (findLatestByKeysStmt == null) {
+            findLatestByKeysStmt = prepare(SELECT_PREFIX +
+                    ModelConstants.KEY_COLUMN + "," +
+                    ModelConstants.TS_COLUMN + "," +
+                    ModelConstants.STRING_VALUE_COLUMN + "," +
+                    ModelConstants.BOOLEAN_VALUE_COLUMN + "," +
+                    ModelConstants.LONG_VALUE_COLUMN + "," +
+                    ModelConstants.DOUBLE_VALUE_COLUMN + " " +
+                    "FROM " + ModelConstants.TS_KV_LATEST_CF + " " +
+                    "WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.KEY_COLUMN + " IN ?");
+        }
+        return findLatestByKeysStmt;
+    }
+
     private PreparedStatement getFindAllLatestStmt() {
         if (findAllLatestStmt == null) {
             findAllLatestStmt = prepare(SELECT_PREFIX +
@@ -837,6 +2282,28 @@ public class CassandraBaseTimeseriesDao extends CassandraAbstractAsyncDao implem
         }
     }
 
+    private boolean isCompactedPartition(TsPartitioningSchedule partitioning, long partition) {
+        return compactor != null && compactor.isCompactedPartition(partitioning, partition);
+    }
+
+    private void addCompactionCandidate(TenantId tenantId, EntityId entityId, String key, long partition) {
+        if (compactor != null) {
+            compactor.addCandidate(tenantId, entityId, key, partition);
+        }
+    }
+
+    ResultSetFuture readAsync(TenantId tenantId, Statement stmt) {
+        return executeAsyncRead(tenantId, stmt);
+    }
+
+    ListenableFuture<Void> writeAsync(TenantId tenantId, Statement stmt) {
+        return getFuture(executeAsyncWrite(tenantId, stmt), rs -> null);
+    }
+
+    PreparedStatement prepareStatement(String query) {
+        return prepare(query);
+    }
+
     private static void addValue(KvEntry kvEntry, BoundStatement stmt, int column) {
         switch (kvEntry.getDataType()) {
             case BOOLEAN:
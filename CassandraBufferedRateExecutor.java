@@ -32,6 +32,10 @@ public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<
 
     private boolean printTenantNames;
 
+    private CassandraLaneDispatcher lanes;
+
+    private CassandraConcurrencyLimit adaptiveLimit;
+
     public CassandraBufferedRateExecutor(
             @Value("${cassandra.query.buffer_size}") int queueLimit,
             @Value("${cassandra.query.concurrent_limit}") int concurrencyLimit,
@@ -41,9 +45,47 @@ public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<
             @Value("${cassandra.query.poll_ms:50}") long pollMs,
             @Value("${cassandra.query.tenant_rate_limits.enabled}") boolean tenantRateLimitsEnabled,
             @Value("${cassandra.query.tenant_rate_limits.configuration}") String tenantRateLimitsConfiguration,
-            @Value("${cassandra.query.tenant_rate_limits.print_tenant_names}") boolean printTenantNames) {
+            @Value("${cassandra.query.tenant_rate_limits.print_tenant_names}") boolean printTenantNames,
+            @Value("${cassandra.query.lanes.enabled:false}") boolean lanesEnabled,
+            @Value("${cassandra.query.lanes.read_concurrent_limit:500}") int readConcurrencyLimit,
+            @Value("${cassandra.query.lanes.write_concurrent_limit:500}") int writeConcurrencyLimit,
+            @Value("${cassandra.query.adaptive_limit.enabled:false}") boolean adaptiveLimitEnabled,
+            @Value("${cassandra.query.adaptive_limit.initial_limit:100}") int adaptiveInitialLimit,
+            @Value("${cassandra.query.adaptive_limit.min_limit:20}") int adaptiveMinLimit,
+            @Value("${cassandra.query.adaptive_limit.max_limit:${cassandra.query.concurrent_limit}}") int adaptiveMaxLimit,
+            @Value("${cassandra.query.adaptive_limit.tolerance:1.5}") double adaptiveTolerance,
+            @Value("${cassandra.query.adaptive_limit.smoothing:0.2}") double adaptiveSmoothing,
+            @Value("${cassandra.query.adaptive_limit.backoff_ratio:0.9}") double adaptiveBackoffRatio,
+            @Value("${cassandra.query.adaptive_limit.window_ms:1000}") long adaptiveWindowMs,
+            @Value("${cassandra.query.adaptive_limit.min_window_samples:10}") int adaptiveMinWindowSamples) {
         super(queueLimit, concurrencyLimit, maxWaitTime, dispatcherThreads, callbackThreads, pollMs, tenantRateLimitsEnabled, tenantRateLimitsConfiguration);
         this.printTenantNames = printTenantNames;
+        if (adaptiveLimitEnabled) {
+            if (adaptiveMaxLimit > concurrencyLimit) {
+                log.warn("Adaptive max limit [{}] exceeds the concurrent limit [{}], statements may queue in the executor",
+                        adaptiveMaxLimit, concurrencyLimit);
+            }
+            this.adaptiveLimit = new CassandraConcurrencyLimit(adaptiveInitialLimit, adaptiveMinLimit, adaptiveMaxLimit,
+                    adaptiveTolerance, adaptiveSmoothing, adaptiveBackoffRatio, adaptiveWindowMs, adaptiveMinWindowSamples);
+        }
+        if (lanesEnabled) {
+            if (adaptiveLimit == null && readConcurrencyLimit + writeConcurrencyLimit > concurrencyLimit) {
+                log.warn("Read [{}] and write [{}] lane limits exceed the concurrent limit [{}], reads may queue behind writes",
+                        readConcurrencyLimit, writeConcurrencyLimit, concurrencyLimit);
+            }
+            this.lanes = new CassandraLaneDispatcher(readConcurrencyLimit, writeConcurrencyLimit, queueLimit, maxWaitTime, pollMs, super::submit, adaptiveLimit);
+        } else if (adaptiveLimit != null) {
+            this.lanes = new CassandraLaneDispatcher(0, concurrencyLimit, queueLimit, maxWaitTime, pollMs, super::submit, adaptiveLimit);
+        }
+    }
+
+    /**
+     * With lanes or the adaptive limit enabled, statements are queued per lane and only handed over to the shared
+     * queue once their lane has a permit, so the shared queue never holds more statements than the lanes have permits.
+     */
+    @Override
+    public ResultSetFuture submit(CassandraStatementTask task) {
+        return lanes != null ? lanes.submit(task) : super.submit(task);
     }
 
     @Scheduled(fixedDelayString = "${cassandra.query.rate_limit_print_interval_ms}")
@@ -71,10 +113,21 @@ public class CassandraBufferedRateExecutor extends AbstractBufferedRateExecutor<
             }
         }));
         rateLimitedTenants.clear();
+        if (adaptiveLimit != null) {
+            log.info("Adaptive concurrency limit [{}]", adaptiveLimit.getLimit());
+        }
+        if (lanes != null) {
+            log.info("Lanes readQueueSize [{}] readInFlight [{}] writeQueueSize [{}] writeInFlight [{}] totalRejected [{}] totalExpired [{}]",
+                    lanes.getReadQueueSize(), lanes.getReadInFlight(), lanes.getWriteQueueSize(), lanes.getWriteInFlight(),
+                    lanes.totalRejected.getAndSet(0), lanes.totalExpired.getAndSet(0));
+        }
     }
 
     @PreDestroy
     public void stop() {
+        if (lanes != null) {
+            lanes.stop();
+        }
         super.stop();
     }
 
@@ -0,0 +1,129 @@
+package org.thingsboard.server.dao.nosql;
+
+import com.datastax.driver.core.exceptions.BusyPoolException;
+import com.datastax.driver.core.exceptions.OperationTimedOutException;
+import com.datastax.driver.core.exceptions.OverloadedException;
+import com.datastax.driver.core.exceptions.ReadTimeoutException;
+import com.datastax.driver.core.exceptions.WriteTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Gradient based limit of concurrent statements, adjusted once per sample window from the observed latency.
+ * <p>
+ * The average latency of the window is compared with a slowly moving long term average. While it stays within
+ * <code>tolerance</code> of the long term average the limit grows by about its square root per window, once
+ * requests start to queue and latency rises the limit shrinks proportionally. Timeouts and overload errors back
+ * the limit off multiplicatively. The limit only grows while it is actually used, and stays within
+ * <code>[minLimit, maxLimit]</code>.
+ */
+@Slf4j
+public class CassandraConcurrencyLimit {
+
+    private static final int LONG_WINDOW = 20;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final double backoffRatio;
+    private final long windowNanos;
+    private final int minWindowSamples;
+
+    private volatile int limit;
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    private long windowStartNanos;
+    private long windowRttSumNanos;
+    private int windowSamples;
+    private int windowMaxInFlight;
+    private boolean windowDropped;
+
+    public CassandraConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, double smoothing,
+                                     double backoffRatio, long windowMs, int minWindowSamples) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.backoffRatio = backoffRatio;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.minWindowSamples = Math.max(1, minWindowSamples);
+        this.estimatedLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+        this.windowStartNanos = System.nanoTime();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param rttNanos latency of a completed statement
+     * @param inFlight statements in flight when the statement completed
+     * @param error    failure of the statement or null
+     */
+    public synchronized void onSample(long rttNanos, int inFlight, Throwable error) {
+        if (error != null) {
+            if (isOverload(error)) {
+                windowDropped = true;
+            }
+        } else {
+            windowRttSumNanos += rttNanos;
+            windowSamples++;
+        }
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        long now = System.nanoTime();
+        if (now - windowStartNanos < windowNanos || (windowSamples < minWindowSamples && !windowDropped)) {
+            return;
+        }
+        updateLimit();
+        windowStartNanos = now;
+        windowRttSumNanos = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+        windowDropped = false;
+    }
+
+    private void updateLimit() {
+        double newLimit;
+        if (windowDropped) {
+            newLimit = estimatedLimit * backoffRatio;
+        } else {
+            double shortRttNanos = (double) windowRttSumNanos / windowSamples;
+            if (longRttNanos == 0) {
+                longRttNanos = shortRttNanos;
+            } else {
+                longRttNanos += (shortRttNanos - longRttNanos) / LONG_WINDOW;
+            }
+            if (longRttNanos / shortRttNanos > 2) {
+                // latency dropped for good, let the long term average follow faster
+                longRttNanos *= 0.95;
+            }
+            if (windowMaxInFlight < estimatedLimit / 2) {
+                // the limit is not what restricts the throughput, so latency says nothing about it
+                return;
+            }
+            double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+            newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            newLimit = estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+        }
+        estimatedLimit = Math.min(maxLimit, Math.max(minLimit, newLimit));
+        int prevLimit = limit;
+        limit = (int) estimatedLimit;
+        if (prevLimit != limit) {
+            log.debug("Concurrency limit changed from {} to {}", prevLimit, limit);
+        }
+    }
+
+    private static boolean isOverload(Throwable error) {
+        return error instanceof TimeoutException
+                || error instanceof OperationTimedOutException
+                || error instanceof OverloadedException
+                || error instanceof BusyPoolException
+                || error instanceof ReadTimeoutException
+                || error instanceof WriteTimeoutException;
+    }
+}
@@ -0,0 +1,247 @@
+package org.thingsboard.server.dao.nosql;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.dao.exception.BufferLimitException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Admits statements to the {@link CassandraBufferedRateExecutor} through separate read and write lanes, so reads
+ * do not queue behind write bursts. Each lane has its own queue and permit budget. A lane may borrow the idle
+ * permits of the other lane while nothing is queued there, and reads are admitted first when both lanes can proceed.
+ * Borrowed permits return to their lane as the borrowing statements complete. A read limit of 0 disables the read
+ * lane, all statements then share the write lane.
+ * <p>
+ * With a {@link CassandraConcurrencyLimit}, the lane limits only set the shares of the lanes in the adaptive limit.
+ */
+@Slf4j
+public class CassandraLaneDispatcher {
+
+    private final Lane readLane;
+    private final Lane writeLane;
+    private final int queueLimit;
+    private final long maxWaitTime;
+    private final long pollMs;
+    private final Function<CassandraStatementTask, ResultSetFuture> launcher;
+    private final CassandraConcurrencyLimit concurrencyLimit;
+    private final ExecutorService dispatcherExecutor;
+    private final Object lock = new Object();
+    private boolean stopped;
+
+    final AtomicInteger totalRejected = new AtomicInteger();
+    final AtomicInteger totalExpired = new AtomicInteger();
+
+    public CassandraLaneDispatcher(int readLimit, int writeLimit, int queueLimit, long maxWaitTime, long pollMs,
+                                   Function<CassandraStatementTask, ResultSetFuture> launcher, @Nullable CassandraConcurrencyLimit concurrencyLimit) {
+        if (readLimit < 0 || writeLimit <= 0) {
+            throw new IllegalArgumentException("Lane limits have to be at least 0 for reads and 1 for writes, got read [" +
+                    readLimit + "] and write [" + writeLimit + "]");
+        }
+        this.readLane = new Lane(readLimit);
+        this.writeLane = new Lane(writeLimit);
+        this.queueLimit = queueLimit;
+        this.maxWaitTime = maxWaitTime;
+        this.pollMs = pollMs;
+        this.launcher = launcher;
+        this.concurrencyLimit = concurrencyLimit;
+        this.dispatcherExecutor = Executors.newSingleThreadExecutor();
+        this.dispatcherExecutor.submit(this::dispatch);
+    }
+
+    public ResultSetFuture submit(CassandraStatementTask task) {
+        SettableFuture<ResultSet> future = SettableFuture.create();
+        Lane lane = task.isRead() && readLane.limit > 0 ? readLane : writeLane;
+        synchronized (lock) {
+            if (stopped) {
+                future.setException(new IllegalStateException("Cassandra lane dispatcher is stopped"));
+            } else if (lane.queue.size() >= queueLimit) {
+                totalRejected.incrementAndGet();
+                future.setException(new BufferLimitException());
+            } else {
+                lane.queue.add(new LaneTask(task, future, System.currentTimeMillis()));
+                lock.notifyAll();
+            }
+        }
+        return new TbResultSetFuture(future);
+    }
+
+    public int getReadQueueSize() {
+        synchronized (lock) {
+            return readLane.queue.size();
+        }
+    }
+
+    public int getWriteQueueSize() {
+        synchronized (lock) {
+            return writeLane.queue.size();
+        }
+    }
+
+    public int getReadInFlight() {
+        synchronized (lock) {
+            return readLane.inFlight;
+        }
+    }
+
+    public int getWriteInFlight() {
+        synchronized (lock) {
+            return writeLane.inFlight;
+        }
+    }
+
+    /**
+     * Fails the statements that are still queued, statements in flight complete as usual.
+     */
+    public void stop() {
+        dispatcherExecutor.shutdownNow();
+        List<LaneTask> queued = new ArrayList<>();
+        synchronized (lock) {
+            stopped = true;
+            queued.addAll(readLane.queue);
+            queued.addAll(writeLane.queue);
+            readLane.queue.clear();
+            writeLane.queue.clear();
+        }
+        IllegalStateException error = new IllegalStateException("Cassandra lane dispatcher is stopped");
+        queued.forEach(laneTask -> laneTask.getFuture().setException(error));
+    }
+
+    private void dispatch() {
+        log.info("Cassandra lane dispatcher thread started");
+        while (!Thread.currentThread().isInterrupted()) {
+            Lane lane;
+            LaneTask laneTask;
+            try {
+                synchronized (lock) {
+                    lane = nextLane();
+                    if (lane == null) {
+                        lock.wait(pollMs);
+                        continue;
+                    }
+                    laneTask = lane.queue.poll();
+                    lane.inFlight++;
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            launch(lane, laneTask);
+        }
+        log.info("Cassandra lane dispatcher thread stopped");
+    }
+
+    private void launch(Lane lane, LaneTask laneTask) {
+        if (System.currentTimeMillis() - laneTask.getCreateTime() > maxWaitTime) {
+            totalExpired.incrementAndGet();
+            release(lane);
+            laneTask.getFuture().setException(new TimeoutException());
+            return;
+        }
+        long startNanos = System.nanoTime();
+        ResultSetFuture result;
+        try {
+            result = launcher.apply(laneTask.getTask());
+        } catch (Throwable t) {
+            release(lane);
+            laneTask.getFuture().setException(t);
+            return;
+        }
+        Futures.addCallback(result, new FutureCallback<ResultSet>() {
+            @Override
+            public void onSuccess(@Nullable ResultSet rs) {
+                complete(lane, startNanos, null);
+                laneTask.getFuture().set(rs);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                complete(lane, startNanos, t);
+                laneTask.getFuture().setException(t);
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private void complete(Lane lane, long startNanos, Throwable error) {
+        int inFlight = release(lane);
+        if (concurrencyLimit != null) {
+            concurrencyLimit.onSample(System.nanoTime() - startNanos, inFlight + 1, error);
+        }
+    }
+
+    /**
+     * @return the statements still in flight
+     */
+    private int release(Lane lane) {
+        synchronized (lock) {
+            lane.inFlight--;
+            lock.notifyAll();
+            return readLane.inFlight + writeLane.inFlight;
+        }
+    }
+
+    private Lane nextLane() {
+        int total = readLane.inFlight + writeLane.inFlight;
+        if (canAcquire(readLane, writeLane, total)) {
+            return readLane;
+        }
+        if (canAcquire(writeLane, readLane, total)) {
+            return writeLane;
+        }
+        return null;
+    }
+
+    private boolean canAcquire(Lane lane, Lane other, int total) {
+        if (lane.queue.isEmpty()) {
+            return false;
+        }
+        int totalLimit = getTotalLimit();
+        if (lane.inFlight < getLaneLimit(lane, totalLimit)) {
+            return true;
+        }
+        return other.queue.isEmpty() && total < totalLimit;
+    }
+
+    private int getTotalLimit() {
+        return concurrencyLimit != null ? concurrencyLimit.getLimit() : readLane.limit + writeLane.limit;
+    }
+
+    private int getLaneLimit(Lane lane, int totalLimit) {
+        if (concurrencyLimit == null) {
+            return lane.limit;
+        }
+        int readLimit = (int) ((long) totalLimit * readLane.limit / (readLane.limit + writeLane.limit));
+        return lane == readLane ? readLimit : totalLimit - readLimit;
+    }
+
+    private static class Lane {
+        private final Deque<LaneTask> queue = new ArrayDeque<>();
+        private final int limit;
+        private int inFlight;
+
+        private Lane(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    @Data
+    private static class LaneTask {
+        private final CassandraStatementTask task;
+        private final SettableFuture<ResultSet> future;
+        private final long createTime;
+    }
+}
@@ -15,5 +15,9 @@ public class CassandraStatementTask implements AsyncTask {
     private final TenantId tenantId;
     private final Session session;
     private final Statement statement;
+    /**
+     * Reads are admitted through the read lane when lanes are enabled, see {@link CassandraLaneDispatcher}.
+     */
+    private final boolean read;
 
 }
@@ -1,13 +1,22 @@
 package org.thingsboard.server.dao.timeseries;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.thingsboard.server.common.data.id.EntityId;
 import org.thingsboard.server.common.data.id.TenantId;
 import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @author Andrew Shvayka
@@ -16,12 +25,66 @@ public interface TimeseriesDao {
 
     ListenableFuture<List<TsKvEntry>> findAllAsync(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries);
 
+    /**
+     * Reads the entries of a single query without aggregation page by page.
+     */
+    default TsKvStream stream(TenantId tenantId, EntityId entityId, ReadTsKvQuery query) {
+        return TsKvStream.of(findAllAsync(tenantId, entityId, Collections.singletonList(query)));
+    }
+
+    /**
+     * Reads the raw entries of the query and reduces them to about <code>points</code> entries.
+     */
+    default ListenableFuture<List<TsKvEntry>> findAllDownsampled(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsDownsamplingMode mode, int points) {
+        TsKvDownsampler downsampler = TsKvDownsampler.of(mode, query.getStartTs(), query.getEndTs(), points);
+        return TsKvStreamConsumer.consume(stream(tenantId, entityId, TsKvDownsampler.toRawQuery(query)), downsampler, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Aggregates the raw entries of the query per interval with a mergeable sketch.
+     *
+     * @param quantile the quantile to return for {@link TsSketchAggregation#PERCENTILE}, between 0 and 1
+     */
+    default ListenableFuture<List<TsKvEntry>> findAllSketchAggregated(TenantId tenantId, EntityId entityId, ReadTsKvQuery query,
+                                                                      TsSketchAggregation aggregation, double quantile) {
+        TsKvSketchAggregator aggregator = new TsKvSketchAggregator(query, Math.max(query.getInterval(), 1000L), aggregation, quantile);
+        return TsKvStreamConsumer.consume(stream(tenantId, entityId, TsKvDownsampler.toRawQuery(query)), aggregator, MoreExecutors.directExecutor());
+    }
+
     ListenableFuture<TsKvEntry> findLatest(TenantId tenantId, EntityId entityId, String key);
 
+    /**
+     * Finds the latest values of the given keys for many entities.
+     *
+     * @return per entity, one entry per key in the order of the given keys; keys without a value have a null value
+     */
+    default ListenableFuture<Map<EntityId, List<TsKvEntry>>> findLatest(TenantId tenantId, Collection<EntityId> entityIds, Collection<String> keys) {
+        List<EntityId> entities = new ArrayList<>(new LinkedHashSet<>(entityIds));
+        List<ListenableFuture<List<TsKvEntry>>> futures = entities.stream()
+                .map(entityId -> Futures.allAsList(keys.stream().map(key -> findLatest(tenantId, entityId, key)).collect(Collectors.toList())))
+                .collect(Collectors.toList());
+        return Futures.transform(Futures.allAsList(futures), results -> {
+            Map<EntityId, List<TsKvEntry>> latest = new LinkedHashMap<>();
+            for (int i = 0; i < entities.size(); i++) {
+                latest.put(entities.get(i), results.get(i));
+            }
+            return latest;
+        }, MoreExecutors.directExecutor());
+    }
+
     ListenableFuture<List<TsKvEntry>> findAllLatest(TenantId tenantId, EntityId entityId);
 
     ListenableFuture<Void> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl);
 
+    /**
+     * Saves multiple entries of the same entity.
+     *
+     * @return one future per entry, in the order of the given entries
+     */
+    default List<ListenableFuture<Void>> save(TenantId tenantId, EntityId entityId, List<TsKvEntry> tsKvEntries, long ttl) {
+        return tsKvEntries.stream().map(tsKvEntry -> save(tenantId, entityId, tsKvEntry, ttl)).collect(Collectors.toList());
+    }
+
     ListenableFuture<Void> savePartition(TenantId tenantId, EntityId entityId, long tsKvEntryTs, String key, long ttl);
 
     ListenableFuture<Void> saveLatest(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry);
@@ -30,5 +93,13 @@ public interface TimeseriesDao {
 
     ListenableFuture<Void> removeLatest(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query);
 
+    /**
+     * Removes the latest values of several keys of the same entity.
+     */
+    default ListenableFuture<Void> removeLatest(TenantId tenantId, EntityId entityId, List<DeleteTsKvQuery> queries) {
+        List<ListenableFuture<Void>> futures = queries.stream().map(query -> removeLatest(tenantId, entityId, query)).collect(Collectors.toList());
+        return Futures.transform(Futures.allAsList(futures), input -> null, MoreExecutors.directExecutor());
+    }
+
     ListenableFuture<Void> removePartition(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query);
 }
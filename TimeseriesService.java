@@ -24,6 +24,7 @@ import org.thingsboard.server.common.data.kv.TsKvEntry;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Andrew Shvayka
@@ -32,8 +33,16 @@ public interface TimeseriesService {
 
     ListenableFuture<List<TsKvEntry>> findAll(TenantId tenantId, EntityId entityId, List<ReadTsKvQuery> queries);
 
+    TsKvStream stream(TenantId tenantId, EntityId entityId, ReadTsKvQuery query);
+
+    ListenableFuture<List<TsKvEntry>> findAllSketchAggregated(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsSketchAggregation aggregation, double quantile);
+
+    ListenableFuture<List<TsKvEntry>> findAllDownsampled(TenantId tenantId, EntityId entityId, ReadTsKvQuery query, TsDownsamplingMode mode, int points);
+
     ListenableFuture<List<TsKvEntry>> findLatest(TenantId tenantId, EntityId entityId, Collection<String> keys);
 
+    ListenableFuture<Map<EntityId, List<TsKvEntry>>> findLatest(TenantId tenantId, Collection<EntityId> entityIds, Collection<String> keys);
+
     ListenableFuture<List<TsKvEntry>> findAllLatest(TenantId tenantId, EntityId entityId);
 
     ListenableFuture<List<Void>> save(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry);
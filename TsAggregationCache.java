@@ -0,0 +1,128 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.Data;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Caches results of aggregation intervals that are closed, i.e. lie entirely in the past.
+ * Results are grouped per entity and key, so the series is the unit of LRU eviction and of invalidation.
+ * Every invalidation moves the generation of the series forward, results computed from reads that started
+ * before are not cached.
+ */
+public class TsAggregationCache {
+
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final Cache<TsKvEntityKey, ConcurrentMap<BucketKey, Optional<TsKvEntry>>> cache;
+    private final int maxBucketsPerSeries;
+    private final long closedAfterMs;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public TsAggregationCache(long maxSeries, int maxBucketsPerSeries, long ttlSec, long closedAfterMs) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSeries)
+                .expireAfterAccess(ttlSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.maxBucketsPerSeries = maxBucketsPerSeries;
+        this.closedAfterMs = closedAfterMs;
+    }
+
+    /**
+     * @return whether the interval ending at endTs no longer receives regular writes and may be cached
+     */
+    public boolean isClosed(long endTs, long now) {
+        return endTs <= now - closedAfterMs;
+    }
+
+    /**
+     * @return cached result of the interval (startTs, startTs + step] or null if it is not cached
+     */
+    public Optional<TsKvEntry> get(EntityId entityId, String key, Aggregation aggregation, long startTs, long step) {
+        ConcurrentMap<BucketKey, Optional<TsKvEntry>> buckets = cache.getIfPresent(new TsKvEntityKey(entityId, key));
+        return buckets != null ? buckets.get(new BucketKey(aggregation, startTs, step)) : null;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} for results of reads started from now on
+     */
+    public long getGeneration(EntityId entityId, String key) {
+        return generations.get(toStripe(new TsKvEntityKey(entityId, key)));
+    }
+
+    /**
+     * Caches the result unless the series was invalidated since <code>generation</code> was taken.
+     */
+    public void put(EntityId entityId, String key, Aggregation aggregation, long startTs, long step, Optional<TsKvEntry> result, long generation) {
+        TsKvEntityKey seriesKey = new TsKvEntityKey(entityId, key);
+        if (generations.get(toStripe(seriesKey)) != generation) {
+            return;
+        }
+        ConcurrentMap<BucketKey, Optional<TsKvEntry>> buckets;
+        try {
+            buckets = cache.get(seriesKey, ConcurrentHashMap::new);
+        } catch (Exception e) {
+            return;
+        }
+        if (buckets.size() >= maxBucketsPerSeries) {
+            buckets.clear();
+        }
+        buckets.put(new BucketKey(aggregation, startTs, step), result);
+        if (generations.get(toStripe(seriesKey)) != generation) {
+            // invalidated while the result was put
+            buckets.remove(new BucketKey(aggregation, startTs, step));
+        }
+    }
+
+    /**
+     * Drops cached intervals of the key that overlap (startTs, endTs].
+     */
+    public void invalidate(EntityId entityId, String key, long startTs, long endTs) {
+        TsKvEntityKey seriesKey = new TsKvEntityKey(entityId, key);
+        generations.incrementAndGet(toStripe(seriesKey));
+        ConcurrentMap<BucketKey, Optional<TsKvEntry>> buckets = cache.getIfPresent(seriesKey);
+        if (buckets != null) {
+            buckets.keySet().removeIf(bucket -> bucket.getStartTs() < endTs && bucket.getStartTs() + bucket.getStep() > startTs);
+        }
+    }
+
+    /**
+     * Drops cached intervals containing a point written with a ts of an already closed interval.
+     * Called once the write landed, so reads started before it do not cache the previous result.
+     */
+    public void onSave(EntityId entityId, String key, long ts, long now) {
+        if (isClosed(ts, now)) {
+            invalidate(entityId, key, ts - 1, ts);
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private static int toStripe(TsKvEntityKey seriesKey) {
+        return (seriesKey.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    @Data
+    private static class BucketKey {
+        private final Aggregation aggregation;
+        private final long startTs;
+        private final long step;
+    }
+}
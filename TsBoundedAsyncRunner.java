@@ -0,0 +1,113 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Runs an asynchronous task for each item with at most <code>parallelism</code> tasks in flight.
+ * The next item is only submitted once a running task completes. The first failure fails the result
+ * and stops submitting further items.
+ */
+public class TsBoundedAsyncRunner<T, R> {
+
+    private final List<T> items;
+    private final Function<T, ListenableFuture<R>> task;
+    private final Executor executor;
+    private final BiConsumer<Integer, Integer> progressListener;
+    private final AtomicReferenceArray<R> results;
+    private final AtomicInteger nextIdx = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final SettableFuture<List<R>> resultFuture = SettableFuture.create();
+
+    private TsBoundedAsyncRunner(List<T> items, Function<T, ListenableFuture<R>> task, Executor executor, BiConsumer<Integer, Integer> progressListener) {
+        this.items = items;
+        this.task = task;
+        this.executor = executor;
+        this.progressListener = progressListener;
+        this.results = new AtomicReferenceArray<>(items.size());
+    }
+
+    /**
+     * @return results in the order of the given items
+     */
+    public static <T, R> ListenableFuture<List<R>> run(List<T> items, int parallelism, Function<T, ListenableFuture<R>> task, Executor executor) {
+        return run(items, parallelism, task, executor, null);
+    }
+
+    /**
+     * @param progressListener notified with the number of completed and total items after each completed task
+     */
+    public static <T, R> ListenableFuture<List<R>> run(List<T> items, int parallelism, Function<T, ListenableFuture<R>> task, Executor executor,
+                                                       BiConsumer<Integer, Integer> progressListener) {
+        return new TsBoundedAsyncRunner<>(items, task, executor, progressListener).start(parallelism);
+    }
+
+    private ListenableFuture<List<R>> start(int parallelism) {
+        if (items.isEmpty()) {
+            resultFuture.set(Collections.emptyList());
+            return resultFuture;
+        }
+        int initial = Math.min(Math.max(parallelism, 1), items.size());
+        for (int i = 0; i < initial; i++) {
+            submitNext();
+        }
+        return resultFuture;
+    }
+
+    private void submitNext() {
+        if (resultFuture.isDone()) {
+            return;
+        }
+        int idx = nextIdx.getAndIncrement();
+        if (idx >= items.size()) {
+            return;
+        }
+        ListenableFuture<R> future;
+        try {
+            future = task.apply(items.get(idx));
+        } catch (Throwable t) {
+            resultFuture.setException(t);
+            return;
+        }
+        Futures.addCallback(future, new FutureCallback<R>() {
+            @Override
+            public void onSuccess(@Nullable R result) {
+                results.set(idx, result);
+                int completedCount = completed.incrementAndGet();
+                if (progressListener != null) {
+                    progressListener.accept(completedCount, items.size());
+                }
+                if (completedCount == items.size()) {
+                    resultFuture.set(toList());
+                } else {
+                    submitNext();
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                resultFuture.setException(t);
+            }
+        }, executor);
+    }
+
+    private List<R> toList() {
+        List<R> list = new ArrayList<>(results.length());
+        for (int i = 0; i < results.length(); i++) {
+            list.add(results.get(i));
+        }
+        return list;
+    }
+}
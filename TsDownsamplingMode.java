@@ -0,0 +1,17 @@
+package org.thingsboard.server.dao.timeseries;
+
+/**
+ * Server side downsampling of raw numeric values for charts.
+ */
+public enum TsDownsamplingMode {
+
+    /**
+     * Largest-Triangle-Three-Buckets: one point per bucket chosen to preserve the visual shape of the series.
+     */
+    LTTB,
+    /**
+     * The minimum and the maximum point of every bucket, so peaks are never lost.
+     */
+    MIN_MAX;
+
+}
@@ -0,0 +1,59 @@
+package org.thingsboard.server.dao.timeseries;
+
+/**
+ * HyperLogLog cardinality estimator over 64 bit hashes. Standard error is about <code>1.04 / sqrt(2^precision)</code>,
+ * e.g. 1.6% for the default precision of 12, which takes 4 KB. Estimators of the same precision merge losslessly.
+ */
+public class TsHyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 12;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public TsHyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public TsHyperLogLog(int precision) {
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(long hash) {
+        int idx = (int) (hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        if (rank > registers[idx]) {
+            registers[idx] = (byte) rank;
+        }
+    }
+
+    public void merge(TsHyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Can't merge estimators of different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / m);
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,160 @@
+package org.thingsboard.server.dao.timeseries;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.EntityIdFactory;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * A timeseries write accepted by the {@link TsWriteJournal} that is not yet written to Cassandra.
+ */
+@Data
+public class TsJournalRecord {
+
+    public enum Type {
+        SAVE, SAVE_LATEST, SAVE_PARTITION
+    }
+
+    private final Type type;
+    private final TenantId tenantId;
+    private final EntityId entityId;
+    /**
+     * The entry of {@link Type#SAVE} and {@link Type#SAVE_LATEST} records.
+     */
+    private final TsKvEntry entry;
+    private final String key;
+    /**
+     * The ts of the entry or the partition of {@link Type#SAVE_PARTITION} records.
+     */
+    private final long ts;
+    private final long ttl;
+    /**
+     * The partition the entry of {@link Type#SAVE} and {@link Type#SAVE_PARTITION} records was saved to, so the
+     * replay does not depend on the partitioning at replay time.
+     */
+    private final long partition;
+
+    public static TsJournalRecord save(TenantId tenantId, EntityId entityId, TsKvEntry entry, long partition, long ttl) {
+        return new TsJournalRecord(Type.SAVE, tenantId, entityId, entry, entry.getKey(), entry.getTs(), ttl, partition);
+    }
+
+    public static TsJournalRecord saveLatest(TenantId tenantId, EntityId entityId, TsKvEntry entry) {
+        return new TsJournalRecord(Type.SAVE_LATEST, tenantId, entityId, entry, entry.getKey(), entry.getTs(), 0, 0);
+    }
+
+    public static TsJournalRecord savePartition(TenantId tenantId, EntityId entityId, long partition, String key, long ttl) {
+        return new TsJournalRecord(Type.SAVE_PARTITION, tenantId, entityId, null, key, partition, ttl, partition);
+    }
+
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type.ordinal());
+            writeUuid(out, tenantId.getId());
+            out.writeUTF(entityId.getEntityType().name());
+            writeUuid(out, entityId.getId());
+            writeString(out, key);
+            out.writeLong(ts);
+            out.writeLong(ttl);
+            out.writeLong(partition);
+            if (entry != null) {
+                out.writeByte(entry.getDataType().ordinal());
+                switch (entry.getDataType()) {
+                    case BOOLEAN:
+                        out.writeBoolean(entry.getBooleanValue().orElse(false));
+                        break;
+                    case LONG:
+                        out.writeLong(entry.getLongValue().orElse(0L));
+                        break;
+                    case DOUBLE:
+                        out.writeDouble(entry.getDoubleValue().orElse(0.0));
+                        break;
+                    default:
+                        writeString(out, entry.getValueAsString());
+                        break;
+                }
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize journal record", e);
+        }
+    }
+
+    public static TsJournalRecord fromBytes(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            Type type = Type.values()[in.readByte()];
+            TenantId tenantId = new TenantId(readUuid(in));
+            EntityId entityId = EntityIdFactory.getByTypeAndUuid(in.readUTF(), readUuid(in));
+            String key = readString(in);
+            long ts = in.readLong();
+            long ttl = in.readLong();
+            long partition = in.readLong();
+            TsKvEntry entry = null;
+            if (type != Type.SAVE_PARTITION) {
+                DataType dataType = DataType.values()[in.readByte()];
+                KvEntry kvEntry;
+                switch (dataType) {
+                    case BOOLEAN:
+                        kvEntry = new BooleanDataEntry(key, in.readBoolean());
+                        break;
+                    case LONG:
+                        kvEntry = new LongDataEntry(key, in.readLong());
+                        break;
+                    case DOUBLE:
+                        kvEntry = new DoubleDataEntry(key, in.readDouble());
+                        break;
+                    default:
+                        kvEntry = new StringDataEntry(key, readString(in));
+                        break;
+                }
+                entry = new BasicTsKvEntry(ts, kvEntry);
+            }
+            return new TsJournalRecord(type, tenantId, entityId, entry, key, ts, ttl, partition);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to deserialize journal record", e);
+        }
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    /**
+     * Unlike {@link DataOutputStream#writeUTF}, not limited to 64 KB.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,23 @@
+package org.thingsboard.server.dao.timeseries;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+
+/**
+ * Time range and aggregation of a query regardless of its key. Aggregated queries of the same entity with equal
+ * ranges can be served by a single multi-key fetch.
+ */
+@Data
+public class TsKvAggregationRange {
+
+    private final long startTs;
+    private final long endTs;
+    private final long interval;
+    private final Aggregation aggregation;
+
+    public static TsKvAggregationRange of(ReadTsKvQuery query) {
+        return new TsKvAggregationRange(query.getStartTs(), query.getEndTs(), query.getInterval(), query.getAggregation());
+    }
+
+}
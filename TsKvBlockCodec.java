@@ -0,0 +1,345 @@
+package org.thingsboard.server.dao.timeseries;
+
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DataType;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Columnar, bit packed encoding of the points of one key within a closed partition:
+ * timestamps and long values use delta-of-delta encoding, doubles use Gorilla XOR encoding,
+ * the data type is only written when it changes. Blocks are stored in:
+ * <pre>
+ * CREATE TABLE IF NOT EXISTS ts_kv_block_cf (
+ *     entity_type text, entity_id timeuuid, key text, partition bigint, ts bigint,
+ *     end_ts bigint, points int, data blob,
+ *     PRIMARY KEY (( entity_type, entity_id, key, partition ), ts)
+ * );
+ * </pre>
+ * where <code>ts</code> and <code>end_ts</code> are the first and the last ts of the block.
+ */
+public class TsKvBlockCodec {
+
+    public static final String TS_KV_BLOCK_CF = "ts_kv_block_cf";
+    public static final String END_TS_COLUMN = "end_ts";
+    public static final String POINTS_COLUMN = "points";
+    public static final String DATA_COLUMN = "data";
+
+    private static final int VERSION = 1;
+    private static final int TYPE_BITS = 3;
+
+    private TsKvBlockCodec() {
+    }
+
+    /**
+     * @param entries entries in ascending ts order without duplicate ts
+     */
+    public static ByteBuffer encode(List<TsKvEntry> entries) {
+        BitWriter writer = new BitWriter(entries.size() * 16 + 8);
+        writer.write(VERSION, 8);
+        writer.write(entries.size(), 32);
+        long prevTs = 0;
+        long prevTsDelta = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            long ts = entries.get(i).getTs();
+            if (i == 0) {
+                writer.write(ts, 64);
+            } else {
+                long delta = ts - prevTs;
+                writeDeltaOfDelta(writer, delta - prevTsDelta);
+                prevTsDelta = delta;
+            }
+            prevTs = ts;
+        }
+        ValueState state = new ValueState();
+        DataType prevType = null;
+        for (TsKvEntry entry : entries) {
+            DataType type = entry.getDataType();
+            if (type == prevType) {
+                writer.write(0, 1);
+            } else {
+                writer.write(1, 1);
+                writer.write(type.ordinal(), TYPE_BITS);
+                prevType = type;
+            }
+            writeValue(writer, state, entry);
+        }
+        return writer.toByteBuffer();
+    }
+
+    public static List<TsKvEntry> decode(ByteBuffer data, String key) {
+        BitReader reader = new BitReader(data);
+        int version = (int) reader.read(8);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported block version " + version);
+        }
+        int count = (int) reader.read(32);
+        long[] timestamps = new long[count];
+        long prevTsDelta = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0) {
+                timestamps[i] = reader.read(64);
+            } else {
+                long delta = prevTsDelta + readDeltaOfDelta(reader);
+                timestamps[i] = timestamps[i - 1] + delta;
+                prevTsDelta = delta;
+            }
+        }
+        List<TsKvEntry> entries = new ArrayList<>(count);
+        ValueState state = new ValueState();
+        DataType type = null;
+        DataType[] types = DataType.values();
+        for (int i = 0; i < count; i++) {
+            if (reader.read(1) == 1) {
+                type = types[(int) reader.read(TYPE_BITS)];
+            }
+            entries.add(new BasicTsKvEntry(timestamps[i], readValue(reader, state, type, key)));
+        }
+        return entries;
+    }
+
+    private static void writeValue(BitWriter writer, ValueState state, KvEntry entry) {
+        switch (entry.getDataType()) {
+            case BOOLEAN:
+                writer.write(entry.getBooleanValue().orElse(false) ? 1 : 0, 1);
+                break;
+            case LONG:
+                long longValue = entry.getLongValue().orElse(0L);
+                if (!state.hasLong) {
+                    writer.write(longValue, 64);
+                    state.hasLong = true;
+                } else {
+                    long delta = longValue - state.prevLong;
+                    writeDeltaOfDelta(writer, delta - state.prevLongDelta);
+                    state.prevLongDelta = delta;
+                }
+                state.prevLong = longValue;
+                break;
+            case DOUBLE:
+                writeDouble(writer, state, Double.doubleToRawLongBits(entry.getDoubleValue().orElse(0.0)));
+                break;
+            case STRING:
+                byte[] bytes = entry.getStrValue().orElse("").getBytes(StandardCharsets.UTF_8);
+                writer.write(bytes.length, 32);
+                for (byte b : bytes) {
+                    writer.write(b, 8);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported data type " + entry.getDataType());
+        }
+    }
+
+    private static KvEntry readValue(BitReader reader, ValueState state, DataType type, String key) {
+        switch (type) {
+            case BOOLEAN:
+                return new BooleanDataEntry(key, reader.read(1) == 1);
+            case LONG:
+                if (!state.hasLong) {
+                    state.prevLong = reader.read(64);
+                    state.hasLong = true;
+                } else {
+                    long delta = state.prevLongDelta + readDeltaOfDelta(reader);
+                    state.prevLong += delta;
+                    state.prevLongDelta = delta;
+                }
+                return new LongDataEntry(key, state.prevLong);
+            case DOUBLE:
+                return new DoubleDataEntry(key, Double.longBitsToDouble(readDouble(reader, state)));
+            case STRING:
+                byte[] bytes = new byte[(int) reader.read(32)];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) reader.read(8);
+                }
+                return new StringDataEntry(key, new String(bytes, StandardCharsets.UTF_8));
+            default:
+                throw new IllegalArgumentException("Unsupported data type " + type);
+        }
+    }
+
+    private static void writeDeltaOfDelta(BitWriter writer, long dod) {
+        if (dod == 0) {
+            writer.write(0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            writer.write(0b10, 2);
+            writer.write(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            writer.write(0b110, 3);
+            writer.write(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            writer.write(0b1110, 4);
+            writer.write(dod, 12);
+        } else {
+            writer.write(0b1111, 4);
+            writer.write(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader reader) {
+        if (reader.read(1) == 0) {
+            return 0;
+        } else if (reader.read(1) == 0) {
+            return signExtend(reader.read(7), 7);
+        } else if (reader.read(1) == 0) {
+            return signExtend(reader.read(9), 9);
+        } else if (reader.read(1) == 0) {
+            return signExtend(reader.read(12), 12);
+        } else {
+            return reader.read(64);
+        }
+    }
+
+    private static void writeDouble(BitWriter writer, ValueState state, long bits) {
+        if (!state.hasDouble) {
+            writer.write(bits, 64);
+            state.hasDouble = true;
+        } else {
+            long xor = bits ^ state.prevDoubleBits;
+            if (xor == 0) {
+                writer.write(0, 1);
+            } else {
+                writer.write(1, 1);
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+                if (state.prevLeading >= 0 && leading >= state.prevLeading && trailing >= state.prevTrailing) {
+                    writer.write(0, 1);
+                    writer.write(xor >>> state.prevTrailing, 64 - state.prevLeading - state.prevTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+                    writer.write(1, 1);
+                    writer.write(leading, 5);
+                    writer.write(significant == 64 ? 0 : significant, 6);
+                    writer.write(xor >>> trailing, significant);
+                    state.prevLeading = leading;
+                    state.prevTrailing = trailing;
+                }
+            }
+        }
+        state.prevDoubleBits = bits;
+    }
+
+    private static long readDouble(BitReader reader, ValueState state) {
+        long bits;
+        if (!state.hasDouble) {
+            bits = reader.read(64);
+            state.hasDouble = true;
+        } else if (reader.read(1) == 0) {
+            bits = state.prevDoubleBits;
+        } else {
+            if (reader.read(1) == 1) {
+                state.prevLeading = (int) reader.read(5);
+                int significant = (int) reader.read(6);
+                state.prevTrailing = 64 - state.prevLeading - (significant == 0 ? 64 : significant);
+            }
+            int significant = 64 - state.prevLeading - state.prevTrailing;
+            bits = state.prevDoubleBits ^ (reader.read(significant) << state.prevTrailing);
+        }
+        state.prevDoubleBits = bits;
+        return bits;
+    }
+
+    private static long signExtend(long value, int bits) {
+        return (value << (64 - bits)) >> (64 - bits);
+    }
+
+    private static class ValueState {
+        boolean hasLong;
+        long prevLong;
+        long prevLongDelta;
+        boolean hasDouble;
+        long prevDoubleBits;
+        int prevLeading = -1;
+        int prevTrailing;
+    }
+
+    private static class BitWriter {
+        private long[] words;
+        private int position;
+
+        BitWriter(int expectedBits) {
+            this.words = new long[Math.max(1, (expectedBits + 63) / 64)];
+        }
+
+        /**
+         * Writes the lowest <code>bits</code> bits of the value, most significant bit first.
+         */
+        void write(long value, int bits) {
+            if (bits == 0) {
+                return;
+            }
+            if (bits < 64) {
+                value &= (1L << bits) - 1;
+            }
+            int wordIdx = position >>> 6;
+            if (wordIdx + 1 >= words.length) {
+                long[] newWords = new long[words.length * 2 + 2];
+                System.arraycopy(words, 0, newWords, 0, words.length);
+                words = newWords;
+            }
+            int free = 64 - (position & 63);
+            if (bits <= free) {
+                words[wordIdx] |= value << (free - bits);
+            } else {
+                int rest = bits - free;
+                words[wordIdx] |= value >>> rest;
+                words[wordIdx + 1] |= value << (64 - rest);
+            }
+            position += bits;
+        }
+
+        ByteBuffer toByteBuffer() {
+            int wordsCount = (position + 63) / 64;
+            ByteBuffer buffer = ByteBuffer.allocate(wordsCount * 8);
+            for (int i = 0; i < wordsCount; i++) {
+                buffer.putLong(words[i]);
+            }
+            buffer.flip();
+            buffer.limit((position + 7) / 8);
+            return buffer;
+        }
+    }
+
+    private static class BitReader {
+        private final long[] words;
+        private int position;
+
+        BitReader(ByteBuffer data) {
+            ByteBuffer buffer = data.duplicate();
+            int bytes = buffer.remaining();
+            this.words = new long[(bytes + 7) / 8 + 1];
+            for (int i = 0; i < bytes; i++) {
+                words[i >>> 3] |= (buffer.get() & 0xFFL) << (56 - 8 * (i & 7));
+            }
+        }
+
+        long read(int bits) {
+            if (bits == 0) {
+                return 0;
+            }
+            int wordIdx = position >>> 6;
+            int free = 64 - (position & 63);
+            long value;
+            if (bits <= free) {
+                value = (words[wordIdx] >>> (free - bits)) & mask(bits);
+            } else {
+                int rest = bits - free;
+                value = ((words[wordIdx] & mask(free)) << rest) | (words[wordIdx + 1] >>> (64 - rest));
+            }
+            position += bits;
+            return value;
+        }
+
+        private static long mask(int bits) {
+            return bits == 64 ? -1L : (1L << bits) - 1;
+        }
+    }
+}
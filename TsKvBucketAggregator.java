@@ -0,0 +1,103 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.Row;
+import lombok.Getter;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.ModelConstants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Folds raw rows of a single key into all aggregation intervals of the query in one pass.
+ * Interval <code>i</code> covers <code>(startTs + i * step, startTs + (i + 1) * step]</code>,
+ * which matches the sub-queries previously issued per interval.
+ */
+public class TsKvBucketAggregator {
+
+    @Getter
+    private final Aggregation aggregation;
+    @Getter
+    private final String key;
+    @Getter
+    private final long startTs;
+    @Getter
+    private final long endTs;
+    @Getter
+    private final long step;
+
+    private final AggregatePartitionsFunction[] functions;
+    private final AggregatePartitionsFunction.AggregationResult[] results;
+    private TsKvRowDecoder decoder;
+
+    public TsKvBucketAggregator(ReadTsKvQuery query, long step) {
+        this.aggregation = query.getAggregation();
+        this.key = query.getKey();
+        this.startTs = query.getStartTs();
+        this.step = step;
+        int bucketsCount = (int) ((query.getEndTs() - query.getStartTs() + step - 1) / step);
+        this.endTs = startTs + bucketsCount * step;
+        this.functions = new AggregatePartitionsFunction[bucketsCount];
+        this.results = new AggregatePartitionsFunction.AggregationResult[bucketsCount];
+    }
+
+    public synchronized void processRow(Row row) {
+        decoder = TsKvRowDecoder.of(row, decoder);
+        int bucket = toBucket(decoder.getTs(row));
+        if (bucket >= 0) {
+            functions[bucket].processRawRow(row, decoder, results[bucket]);
+        }
+    }
+
+    public synchronized void processEntry(TsKvEntry entry) {
+        int bucket = toBucket(entry.getTs());
+        if (bucket >= 0) {
+            functions[bucket].processEntry(entry, results[bucket]);
+        }
+    }
+
+    /**
+     * Folds a rollup partial, whose ts is the end of the rollup bucket. The rollup resolution has to tile the intervals.
+     */
+    public synchronized void processRollupRow(Row row) {
+        int bucket = toBucket(row.getLong(ModelConstants.TS_COLUMN));
+        if (bucket >= 0) {
+            functions[bucket].processRollupRow(row, results[bucket]);
+        }
+    }
+
+    private int toBucket(long ts) {
+        if (ts <= startTs || ts > endTs) {
+            return -1;
+        }
+        int bucket = (int) ((ts - startTs - 1) / step);
+        if (functions[bucket] == null) {
+            long bucketStartTs = startTs + bucket * step;
+            functions[bucket] = new AggregatePartitionsFunction(aggregation, key, bucketStartTs + step / 2);
+            results[bucket] = new AggregatePartitionsFunction.AggregationResult();
+        }
+        return bucket;
+    }
+
+    public int getBucketsCount() {
+        return functions.length;
+    }
+
+    /**
+     * @return the result of interval <code>bucket</code>, empty if no point was folded into it
+     */
+    public synchronized Optional<TsKvEntry> getBucket(int bucket) {
+        return functions[bucket] != null ? functions[bucket].processAggregationResult(results[bucket]) : Optional.empty();
+    }
+
+    public synchronized List<TsKvEntry> getData() {
+        List<TsKvEntry> data = new ArrayList<>();
+        for (int i = 0; i < functions.length; i++) {
+            getBucket(i).ifPresent(data::add);
+        }
+        return data;
+    }
+}
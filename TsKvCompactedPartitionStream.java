@@ -0,0 +1,180 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.DESC_ORDER;
+
+/**
+ * Streams a single partition that may have been compacted, merging the points of its {@link TsKvBlockCodec} blocks
+ * with its raw rows in the order of the stream. Both sources are read page by page, so at most one driver page of
+ * each source and the points of one decoded block are held in memory, and reading stops once <code>limit</code>
+ * points were returned. A partition that was never compacted simply has no blocks.
+ * <p>
+ * Raw points win over block points with the same ts. While a compaction rewrites the partition the old and the new
+ * blocks overlap, block points that do not advance the stream are skipped.
+ */
+public class TsKvCompactedPartitionStream implements TsKvStream {
+
+    private final ListenableFuture<ResultSet> blocksFuture;
+    private final ListenableFuture<ResultSet> rawFuture;
+    private final String key;
+    private final long startTs;
+    private final long endTs;
+    private final boolean desc;
+    private final int pageSize;
+    private final Function<Row, TsKvEntry> converter;
+    private final Consumer<Row> rowListener;
+    private final Executor executor;
+
+    private final Deque<TsKvEntry> blockEntries = new ArrayDeque<>();
+    private ResultSet blocks;
+    private ResultSet raw;
+    private TsKvEntry rawHead;
+    private boolean started;
+    private boolean emitted;
+    private long lastTs;
+    private int remaining;
+    private volatile boolean closed;
+
+    /**
+     * @param blocksFuture rows of the blocks table with the first ts of the block at or before endTs, in the order of the stream
+     * @param rawFuture    raw rows in (startTs, endTs] in the order of the stream
+     * @param rowListener  receives every block and raw row as it is read, may be null
+     */
+    public TsKvCompactedPartitionStream(ListenableFuture<ResultSet> blocksFuture, ListenableFuture<ResultSet> rawFuture, String key,
+                                        long startTs, long endTs, String orderBy, int limit, int pageSize,
+                                        Function<Row, TsKvEntry> converter, Consumer<Row> rowListener, Executor executor) {
+        this.blocksFuture = blocksFuture;
+        this.rawFuture = rawFuture;
+        this.key = key;
+        this.startTs = startTs;
+        this.endTs = endTs;
+        this.desc = DESC_ORDER.equals(orderBy);
+        this.remaining = limit;
+        this.pageSize = Math.max(1, pageSize);
+        this.converter = converter;
+        this.rowListener = rowListener;
+        this.executor = executor;
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> nextPage() {
+        if (closed || remaining <= 0) {
+            return Futures.immediateFuture(Collections.emptyList());
+        }
+        if (!started) {
+            return Futures.transformAsync(Futures.allAsList(blocksFuture, rawFuture), results -> {
+                started = true;
+                blocks = results.get(0);
+                raw = results.get(1);
+                return nextPage();
+            }, executor);
+        }
+        List<TsKvEntry> page = new ArrayList<>(Math.min(pageSize, remaining));
+        while (page.size() < pageSize && page.size() < remaining) {
+            if (blockEntries.isEmpty() && blocks != null) {
+                if (blocks.getAvailableWithoutFetching() > 0) {
+                    decodeBlock(blocks.one());
+                    continue;
+                }
+                if (!blocks.isFullyFetched()) {
+                    return fetchMore(blocks, page);
+                }
+                blocks = null;
+            }
+            if (rawHead == null && raw != null) {
+                if (raw.getAvailableWithoutFetching() > 0) {
+                    Row row = raw.one();
+                    onRow(row);
+                    rawHead = converter.apply(row);
+                    continue;
+                }
+                if (!raw.isFullyFetched()) {
+                    return fetchMore(raw, page);
+                }
+                raw = null;
+            }
+            TsKvEntry block = blockEntries.peekFirst();
+            if (block == null && rawHead == null) {
+                break;
+            }
+            if (block != null && ((emitted && !isAfter(block.getTs(), lastTs)) || (rawHead != null && block.getTs() == rawHead.getTs()))) {
+                blockEntries.pollFirst();
+                continue;
+            }
+            TsKvEntry next;
+            if (block == null || (rawHead != null && isAfter(block.getTs(), rawHead.getTs()))) {
+                next = rawHead;
+                rawHead = null;
+            } else {
+                next = blockEntries.pollFirst();
+            }
+            emitted = true;
+            lastTs = next.getTs();
+            page.add(next);
+        }
+        remaining -= page.size();
+        return Futures.immediateFuture(page);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        blocks = null;
+        raw = null;
+        blockEntries.clear();
+    }
+
+    /**
+     * Returns what was merged so far, or requests the next page of the source if nothing was.
+     */
+    private ListenableFuture<List<TsKvEntry>> fetchMore(ResultSet rs, List<TsKvEntry> page) {
+        if (!page.isEmpty()) {
+            remaining -= page.size();
+            return Futures.immediateFuture(page);
+        }
+        return Futures.transformAsync(rs.fetchMoreResults(), fetched -> nextPage(), executor);
+    }
+
+    private void decodeBlock(Row row) {
+        onRow(row);
+        if (row.getLong(TsKvBlockCodec.END_TS_COLUMN) <= startTs) {
+            return;
+        }
+        for (TsKvEntry entry : TsKvBlockCodec.decode(row.getBytes(TsKvBlockCodec.DATA_COLUMN), key)) {
+            if (entry.getTs() > startTs && entry.getTs() <= endTs) {
+                if (desc) {
+                    blockEntries.addFirst(entry);
+                } else {
+                    blockEntries.addLast(entry);
+                }
+            }
+        }
+    }
+
+    private void onRow(Row row) {
+        if (rowListener != null) {
+            rowListener.accept(row);
+        }
+    }
+
+    /**
+     * @return whether ts comes after other in the order of the stream
+     */
+    private boolean isAfter(long ts, long other) {
+        return desc ? ts < other : ts > other;
+    }
+}
@@ -0,0 +1,467 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.ModelConstants;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.ASC_ORDER;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.DESC_ORDER;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.EQUALS_PARAM;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.INSERT_INTO;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.SELECT_PREFIX;
+
+/**
+ * Compacts closed partitions into {@link TsKvBlockCodec} blocks, and reads and removes the points of partitions that may
+ * have been compacted. Created by {@link CassandraBaseTimeseriesDao} if compacted blocks are read, candidates written
+ * since the node start are only tracked if compaction is enabled as well.
+ */
+@Slf4j
+public class TsKvCompactor {
+
+    private final CassandraBaseTimeseriesDao dao;
+    private final Executor executor;
+    private final long closedAfterMs;
+    private final int blockSize;
+    private final int parallelism;
+    private final int maxCandidates;
+    private final int streamFetchSize;
+
+    private final Set<CompactionCandidate> candidates;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private PreparedStatement blockFetchStmtAsc;
+    private PreparedStatement blockFetchStmtDesc;
+    private PreparedStatement blockRowDeleteStmt;
+    private PreparedStatement rawTtlFetchStmt;
+    private PreparedStatement blockInsertStmt;
+    private PreparedStatement blockDeleteStmt;
+    private PreparedStatement dropPartitionBeforeStmt;
+
+    public TsKvCompactor(CassandraBaseTimeseriesDao dao, Executor executor, boolean trackCandidates, long closedAfterMs, int blockSize,
+                         int parallelism, int maxCandidates, int streamFetchSize) {
+        this.dao = dao;
+        this.executor = executor;
+        this.closedAfterMs = closedAfterMs;
+        this.blockSize = Math.max(1, blockSize);
+        this.parallelism = parallelism;
+        this.maxCandidates = maxCandidates;
+        this.streamFetchSize = streamFetchSize;
+        this.candidates = trackCandidates ? ConcurrentHashMap.newKeySet() : null;
+    }
+
+    /**
+     * Compacts the partitions written since the node start that are closed by now.
+     * Partitions written before the start have to be compacted with {@link #compactPartition}.
+     */
+    public void compactClosedPartitions() {
+        if (candidates == null || !running.compareAndSet(false, true)) {
+            return;
+        }
+        List<CompactionCandidate> due = new ArrayList<>(candidates);
+        if (due.isEmpty()) {
+            running.set(false);
+            return;
+        }
+        due.forEach(candidates::remove);
+        log.debug("Checking {} partitions for compaction", due.size());
+        ListenableFuture<List<Void>> future = TsBoundedAsyncRunner.run(due, parallelism, candidate ->
+                Futures.catching(compactClosedPartition(candidate), Throwable.class, t -> {
+                    log.warn("[{}][{}] Failed to compact partition {} of key [{}]", candidate.getEntityId().getEntityType(), candidate.getEntityId().getId(),
+                            candidate.getPartition(), candidate.getKey(), t);
+                    candidates.add(candidate);
+                    return null;
+                }, executor), executor);
+        Futures.addCallback(future, new FutureCallback<List<Void>>() {
+            @Override
+            public void onSuccess(@Nullable List<Void> result) {
+                running.set(false);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                running.set(false);
+            }
+        }, executor);
+    }
+
+    private ListenableFuture<Void> compactClosedPartition(CompactionCandidate candidate) {
+        return Futures.transformAsync(dao.getPartitioning(candidate.getTenantId(), candidate.getEntityId(), candidate.getKey()), partitioning -> {
+            if (!isCompactedPartition(partitioning, candidate.getPartition())) {
+                // not closed yet
+                candidates.add(candidate);
+                return Futures.immediateFuture(null);
+            }
+            return compactPartition(candidate.getTenantId(), candidate.getEntityId(), candidate.getKey(), candidate.getPartition(), partitioning);
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Rewrites the raw points of a closed partition, together with already compacted points, as
+     * {@link TsKvBlockCodec} blocks and drops the raw rows and the previous blocks. The partition is streamed, so at
+     * most a page and a block of points are held in memory. Blocks keep the longest remaining TTL of their points and
+     * have no TTL if any of the points has none. The raw rows and the previous blocks are dropped with the write
+     * timestamp of the start of the compaction, so points written to the partition meanwhile are kept and merged on read.
+     */
+    public ListenableFuture<Void> compactPartition(TenantId tenantId, EntityId entityId, String key, long partition) {
+        return Futures.transformAsync(dao.getPartitioning(tenantId, entityId, key),
+                partitioning -> compactPartition(tenantId, entityId, key, partition, partitioning), MoreExecutors.directExecutor());
+    }
+
+    private ListenableFuture<Void> compactPartition(TenantId tenantId, EntityId entityId, String key, long partition, TsPartitioningSchedule partitioning) {
+        if (!isCompactedPartition(partitioning, partition)) {
+            return Futures.immediateFuture(null);
+        }
+        long writeTimeMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        BoundStatement probeStmt = bindRawFetchStmt(entityId, key, partition, Long.MIN_VALUE, Long.MAX_VALUE);
+        probeStmt.setInt(6, 1);
+        return Futures.transformAsync(dao.readAsync(tenantId, probeStmt), probe -> {
+            if (probe == null || probe.getAvailableWithoutFetching() == 0) {
+                // no raw points written since the last compaction
+                return Futures.immediateFuture(null);
+            }
+            log.debug("[{}][{}] Compacting partition {} of key [{}]", entityId.getEntityType(), entityId.getId(), partition, key);
+            AtomicLong ttl = new AtomicLong(-1);
+            BoundStatement rawStmt = getRawTtlFetchStmt().bind();
+            rawStmt.setString(0, entityId.getEntityType().name());
+            rawStmt.setUUID(1, entityId.getId());
+            rawStmt.setString(2, key);
+            rawStmt.setLong(3, partition);
+            TsKvStream entries = newCompactedPartitionStream(tenantId, entityId, key, partition, Long.MIN_VALUE, Long.MAX_VALUE, ASC_ORDER,
+                    Integer.MAX_VALUE, rawStmt, row -> {
+                        long rowTtl = getRemainingTtl(row);
+                        ttl.updateAndGet(current -> current == 0 || rowTtl == 0 ? 0 : Math.max(current, rowTtl));
+                    });
+            return Futures.transformAsync(writeBlocks(tenantId, entityId, key, partition, entries, ttl, writeTimeMicros + 1, new ArrayList<>()), written -> {
+                BoundStatement dropBlocksStmt = getBlockDeleteStmt().bind();
+                dropBlocksStmt.setLong(0, writeTimeMicros);
+                dropBlocksStmt.setString(1, entityId.getEntityType().name());
+                dropBlocksStmt.setUUID(2, entityId.getId());
+                dropBlocksStmt.setString(3, key);
+                dropBlocksStmt.setLong(4, partition);
+                BoundStatement dropRawStmt = getDropPartitionBeforeStmt().bind();
+                dropRawStmt.setLong(0, writeTimeMicros);
+                dropRawStmt.setString(1, entityId.getEntityType().name());
+                dropRawStmt.setUUID(2, entityId.getId());
+                dropRawStmt.setString(3, key);
+                dropRawStmt.setLong(4, partition);
+                return Futures.transform(Futures.allAsList(dao.writeAsync(tenantId, dropBlocksStmt),
+                        dao.writeAsync(tenantId, dropRawStmt)), result -> null, executor);
+            }, executor);
+        }, executor);
+    }
+
+    /**
+     * Writes the entries of the stream as blocks, reading the next page only once the full blocks of the current one
+     * are written.
+     *
+     * @param ttl TTL of the blocks in seconds, 0 for none, updated while the stream is read
+     */
+    private ListenableFuture<Void> writeBlocks(TenantId tenantId, EntityId entityId, String key, long partition, TsKvStream entries,
+                                               AtomicLong ttl, long writeTimeMicros, List<TsKvEntry> pending) {
+        return Futures.transformAsync(entries.nextPage(), page -> {
+            boolean exhausted = page == null || page.isEmpty();
+            if (!exhausted) {
+                pending.addAll(page);
+            }
+            List<ListenableFuture<Void>> futures = new ArrayList<>();
+            while (pending.size() >= blockSize || (exhausted && !pending.isEmpty())) {
+                List<TsKvEntry> blockEntries = pending.subList(0, Math.min(blockSize, pending.size()));
+                futures.add(dao.writeAsync(tenantId, bindBlockInsertStmt(entityId, key, partition, blockEntries,
+                        Math.max(ttl.get(), 0), writeTimeMicros)));
+                blockEntries.clear();
+            }
+            if (exhausted) {
+                entries.close();
+                return Futures.transform(Futures.allAsList(futures), result -> null, executor);
+            }
+            return Futures.transformAsync(Futures.allAsList(futures),
+                    result -> writeBlocks(tenantId, entityId, key, partition, entries, ttl, writeTimeMicros, pending), executor);
+        }, executor);
+    }
+
+    /**
+     * @param entries entries of the block in ascending ts order
+     */
+    private BoundStatement bindBlockInsertStmt(EntityId entityId, String key, long partition, List<TsKvEntry> entries, long ttl, long writeTimeMicros) {
+        BoundStatement stmt = getBlockInsertStmt().bind();
+        stmt.setString(0, entityId.getEntityType().name());
+        stmt.setUUID(1, entityId.getId());
+        stmt.setString(2, key);
+        stmt.setLong(3, partition);
+        stmt.setLong(4, entries.get(0).getTs());
+        stmt.setLong(5, entries.get(entries.size() - 1).getTs());
+        stmt.setInt(6, entries.size());
+        stmt.setBytes(7, TsKvBlockCodec.encode(entries));
+        stmt.setInt(8, (int) ttl);
+        stmt.setLong(9, writeTimeMicros);
+        return stmt;
+    }
+
+    /**
+     * @return the longest remaining TTL of the selected TTL columns of the row in seconds, 0 if the row has none
+     */
+    private static long getRemainingTtl(Row row) {
+        long ttl = 0;
+        ColumnDefinitions columns = row.getColumnDefinitions();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.getName(i).startsWith("ttl(") && !row.isNull(i)) {
+                ttl = Math.max(ttl, row.getInt(i));
+            }
+        }
+        return ttl;
+    }
+
+    /**
+     * A partition may be served from compacted blocks once it is closed for longer than
+     * <code>cassandra.query.ts_compaction.closed_after_ms</code>. Its blocks and raw rows are then read together and
+     * merged page by page. A partition that was not compacted has no blocks, so the data is still read only once.
+     */
+    public boolean isCompactedPartition(TsPartitioningSchedule partitioning, long partition) {
+        return partitioning.toNextPartitionTs(partition) + closedAfterMs <= System.currentTimeMillis();
+    }
+
+    public void addCandidate(TenantId tenantId, EntityId entityId, String key, long partition) {
+        if (candidates != null && candidates.size() < maxCandidates) {
+            candidates.add(new CompactionCandidate(tenantId, entityId, key, partition));
+        }
+    }
+
+    /**
+     * Streams a partition that may have been compacted: the compacted points merged with the raw points in (startTs, endTs].
+     */
+    public TsKvStream openCompactedPartition(TenantId tenantId, EntityId entityId, String key, long partition, long startTs, long endTs,
+                                             String orderBy, int limit) {
+        BoundStatement rawStmt = dao.getFetchStmt(Aggregation.NONE, orderBy).bind();
+        rawStmt.setString(0, entityId.getEntityType().name());
+        rawStmt.setUUID(1, entityId.getId());
+        rawStmt.setString(2, key);
+        rawStmt.setLong(3, partition);
+        rawStmt.setLong(4, startTs);
+        rawStmt.setLong(5, endTs);
+        rawStmt.setInt(6, limit);
+        return newCompactedPartitionStream(tenantId, entityId, key, partition, startTs, endTs, orderBy, limit, rawStmt, null);
+    }
+
+    /**
+     * @param rawStmt reads the raw rows of the partition, bound up to the partition
+     */
+    private TsKvStream newCompactedPartitionStream(TenantId tenantId, EntityId entityId, String key, long partition, long startTs, long endTs,
+                                                   String orderBy, int limit, BoundStatement rawStmt, @Nullable Consumer<Row> rowListener) {
+        BoundStatement blocksStmt = getBlockFetchStmt(orderBy).bind();
+        blocksStmt.setString(0, entityId.getEntityType().name());
+        blocksStmt.setUUID(1, entityId.getId());
+        blocksStmt.setString(2, key);
+        blocksStmt.setLong(3, partition);
+        blocksStmt.setLong(4, endTs);
+        // about a stream page of points per page of blocks
+        blocksStmt.setFetchSize(Math.max(1, streamFetchSize / blockSize));
+        rawStmt.setFetchSize(streamFetchSize);
+        log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, blocksStmt, entityId.getEntityType(), entityId.getId());
+        log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, rawStmt, entityId.getEntityType(), entityId.getId());
+        return new TsKvCompactedPartitionStream(dao.readAsync(tenantId, blocksStmt), dao.readAsync(tenantId, rawStmt), key,
+                startTs, endTs, orderBy, limit, streamFetchSize, TsKvRowDecoder.converter(), rowListener, executor);
+    }
+
+    public ListenableFuture<Void> foldCompactedPartition(TenantId tenantId, EntityId entityId, String key, long partition, long startTs, long endTs,
+                                                         Consumer<TsKvEntry> entryConsumer) {
+        return TsKvStream.consume(openCompactedPartition(tenantId, entityId, key, partition, startTs, endTs, ASC_ORDER, Integer.MAX_VALUE),
+                page -> page.forEach(entryConsumer), executor);
+    }
+
+    /**
+     * Removes the points in (startTs, endTs] from the compacted blocks of the given partitions. Only the blocks that
+     * overlap the range are rewritten, each with a single partition batch.
+     */
+    public ListenableFuture<List<Void>> removeFromBlocks(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query,
+                                                        TsPartitioningSchedule partitioning, List<Long> partitions) {
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (Long partition : partitions) {
+            if (!isCompactedPartition(partitioning, partition)) {
+                continue;
+            }
+            long writeTimeMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+            BoundStatement stmt = getBlockFetchStmt(ASC_ORDER).bind();
+            stmt.setString(0, entityId.getEntityType().name());
+            stmt.setUUID(1, entityId.getId());
+            stmt.setString(2, query.getKey());
+            stmt.setLong(3, partition);
+            stmt.setLong(4, query.getEndTs());
+            List<ListenableFuture<Void>> rewrites = Collections.synchronizedList(new ArrayList<>());
+            ListenableFuture<Void> fetched = dao.fetchAndFold(tenantId, entityId, stmt, 1, row -> {
+                if (row.getLong(TsKvBlockCodec.END_TS_COLUMN) > query.getStartTs()) {
+                    rewrites.add(removeFromBlock(tenantId, entityId, query, partition, row, writeTimeMicros));
+                }
+            });
+            futures.add(Futures.transformAsync(fetched, result -> Futures.transform(Futures.allAsList(rewrites), r -> null, executor),
+                    executor));
+        }
+        return Futures.allAsList(futures);
+    }
+
+    private ListenableFuture<Void> removeFromBlock(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query, long partition, Row row, long writeTimeMicros) {
+        List<TsKvEntry> entries = TsKvBlockCodec.decode(row.getBytes(TsKvBlockCodec.DATA_COLUMN), query.getKey());
+        List<TsKvEntry> remaining = entries.stream()
+                .filter(entry -> entry.getTs() <= query.getStartTs() || entry.getTs() > query.getEndTs())
+                .collect(Collectors.toList());
+        if (remaining.size() == entries.size()) {
+            return Futures.immediateFuture(null);
+        }
+        BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        BoundStatement deleteStmt = getBlockRowDeleteStmt().bind();
+        deleteStmt.setLong(0, writeTimeMicros);
+        deleteStmt.setString(1, entityId.getEntityType().name());
+        deleteStmt.setUUID(2, entityId.getId());
+        deleteStmt.setString(3, query.getKey());
+        deleteStmt.setLong(4, partition);
+        deleteStmt.setLong(5, row.getLong(ModelConstants.TS_COLUMN));
+        batch.add(deleteStmt);
+        if (!remaining.isEmpty()) {
+            batch.add(bindBlockInsertStmt(entityId, query.getKey(), partition, remaining, getRemainingTtl(row), writeTimeMicros + 1));
+        }
+        return dao.writeAsync(tenantId, batch);
+    }
+
+    private BoundStatement bindRawFetchStmt(EntityId entityId, String key, long partition, long startTs, long endTs) {
+        BoundStatement stmt = dao.getFetchStmt(Aggregation.NONE, ASC_ORDER).bind();
+        stmt.setString(0, entityId.getEntityType().name());
+        stmt.setUUID(1, entityId.getId());
+        stmt.setString(2, key);
+        stmt.setLong(3, partition);
+        stmt.setLong(4, startTs);
+        stmt.setLong(5, endTs);
+        stmt.setInt(6, Integer.MAX_VALUE);
+        return stmt;
+    }
+
+    private PreparedStatement getBlockFetchStmt(String orderBy) {
+        switch (orderBy) {
+            case ASC_ORDER:
+                if (blockFetchStmtAsc == null) {
+                    blockFetchStmtAsc = initBlockFetchStmt(orderBy);
+                }
+                return blockFetchStmtAsc;
+            case DESC_ORDER:
+                if (blockFetchStmtDesc == null) {
+                    blockFetchStmtDesc = initBlockFetchStmt(orderBy);
+                }
+                return blockFetchStmtDesc;
+            default:
+                throw new RuntimeException("Not supported" + orderBy + "order!");
+        }
+    }
+
+    private PreparedStatement initBlockFetchStmt(String orderBy) {
+        return dao.prepareStatement(SELECT_PREFIX +
+                ModelConstants.TS_COLUMN + "," + TsKvBlockCodec.END_TS_COLUMN + "," + TsKvBlockCodec.DATA_COLUMN + "," +
+                "TTL(" + TsKvBlockCodec.DATA_COLUMN + ") " +
+                "FROM " + TsKvBlockCodec.TS_KV_BLOCK_CF + " " +
+                "WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM +
+                "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM +
+                "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM +
+                "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM +
+                "AND " + ModelConstants.TS_COLUMN + " <= ? " +
+                "ORDER BY " + ModelConstants.TS_COLUMN + " " + orderBy);
+    }
+
+    private PreparedStatement getRawTtlFetchStmt() {
+        if (rawTtlFetchStmt == null) {
+            rawTtlFetchStmt = dao.prepareStatement(SELECT_PREFIX +
+                    String.join(", ", ModelConstants.getFetchColumnNames(Aggregation.NONE)) + ", " +
+                    "TTL(" + ModelConstants.BOOLEAN_VALUE_COLUMN + "), TTL(" + ModelConstants.STRING_VALUE_COLUMN + "), " +
+                    "TTL(" + ModelConstants.LONG_VALUE_COLUMN + "), TTL(" + ModelConstants.DOUBLE_VALUE_COLUMN + ")" +
+                    " FROM " + ModelConstants.TS_KV_CF
+                    + " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM
+                    + "ORDER BY " + ModelConstants.TS_COLUMN + " " + ASC_ORDER);
+        }
+        return rawTtlFetchStmt;
+    }
+
+    private PreparedStatement getBlockInsertStmt() {
+        if (blockInsertStmt == null) {
+            blockInsertStmt = dao.prepareStatement(INSERT_INTO + TsKvBlockCodec.TS_KV_BLOCK_CF +
+                    "(" + ModelConstants.ENTITY_TYPE_COLUMN +
+                    "," + ModelConstants.ENTITY_ID_COLUMN +
+                    "," + ModelConstants.KEY_COLUMN +
+                    "," + ModelConstants.PARTITION_COLUMN +
+                    "," + ModelConstants.TS_COLUMN +
+                    "," + TsKvBlockCodec.END_TS_COLUMN +
+                    "," + TsKvBlockCodec.POINTS_COLUMN +
+                    "," + TsKvBlockCodec.DATA_COLUMN + ")" +
+                    " VALUES(?, ?, ?, ?, ?, ?, ?, ?) USING TTL ? AND TIMESTAMP ?");
+        }
+        return blockInsertStmt;
+    }
+
+    private PreparedStatement getBlockDeleteStmt() {
+        if (blockDeleteStmt == null) {
+            blockDeleteStmt = dao.prepareStatement("DELETE FROM " + TsKvBlockCodec.TS_KV_BLOCK_CF + " USING TIMESTAMP ?" +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM);
+        }
+        return blockDeleteStmt;
+    }
+
+    private PreparedStatement getBlockRowDeleteStmt() {
+        if (blockRowDeleteStmt == null) {
+            blockRowDeleteStmt = dao.prepareStatement("DELETE FROM " + TsKvBlockCodec.TS_KV_BLOCK_CF + " USING TIMESTAMP ?" +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.TS_COLUMN + EQUALS_PARAM);
+        }
+        return blockRowDeleteStmt;
+    }
+
+    private PreparedStatement getDropPartitionBeforeStmt() {
+        if (dropPartitionBeforeStmt == null) {
+            dropPartitionBeforeStmt = dao.prepareStatement("DELETE FROM " + ModelConstants.TS_KV_CF + " USING TIMESTAMP ?" +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM);
+        }
+        return dropPartitionBeforeStmt;
+    }
+
+    @Data
+    private static class CompactionCandidate {
+        private final TenantId tenantId;
+        private final EntityId entityId;
+        private final String key;
+        private final long partition;
+    }
+}
@@ -0,0 +1,48 @@
+package org.thingsboard.server.dao.timeseries;
+
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.ASC_ORDER;
+
+/**
+ * Reduces raw entries of a single key, added in ascending ts order, to a bounded number of points.
+ * Memory use depends on the requested number of points and not on the number of added entries.
+ * Entries that are not numeric are skipped.
+ */
+public interface TsKvDownsampler extends TsKvStreamConsumer {
+
+    static TsKvDownsampler of(TsDownsamplingMode mode, long startTs, long endTs, int points) {
+        switch (mode) {
+            case LTTB:
+                return new TsKvLttbDownsampler(startTs, endTs, points);
+            case MIN_MAX:
+                return new TsKvMinMaxDownsampler(startTs, endTs, points);
+            default:
+                throw new IllegalArgumentException("Unsupported downsampling mode " + mode);
+        }
+    }
+
+    /**
+     * Raw ascending read of the whole range of the query, which is what downsampling consumes.
+     */
+    static ReadTsKvQuery toRawQuery(ReadTsKvQuery query) {
+        return new BaseReadTsKvQuery(query.getKey(), query.getStartTs(), query.getEndTs(), query.getInterval(), Integer.MAX_VALUE, Aggregation.NONE, ASC_ORDER);
+    }
+
+    /**
+     * @return the numeric value of the entry or NaN if it is not numeric
+     */
+    static double toDouble(TsKvEntry entry) {
+        switch (entry.getDataType()) {
+            case LONG:
+                return entry.getLongValue().map(Long::doubleValue).orElse(Double.NaN);
+            case DOUBLE:
+                return entry.getDoubleValue().orElse(Double.NaN);
+            default:
+                return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.thingsboard.server.dao.timeseries;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.id.EntityId;
+
+/**
+ * Identifies a single timeseries of an entity.
+ */
+@Data
+public class TsKvEntityKey {
+
+    private final EntityId entityId;
+    private final String key;
+
+}
@@ -0,0 +1,164 @@
+package org.thingsboard.server.dao.timeseries;
+
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming Largest-Triangle-Three-Buckets with min/max preselection (MinMaxLTTB). The first and the last entry are
+ * always kept and the range in between is split into <code>points - 2</code> equal time buckets. Every bucket is split
+ * into {@link #SUB_BUCKETS} sub-buckets whose minimum and maximum entries are the candidates of the bucket. One
+ * candidate is selected per bucket: the one forming the largest triangle with the previously selected entry and the
+ * average of all entries of the following non-empty bucket.
+ * Only the candidates and the running averages of two buckets are held at a time.
+ */
+public class TsKvLttbDownsampler implements TsKvDownsampler {
+
+    static final int SUB_BUCKETS = 4;
+
+    private final long startTs;
+    private final double bucketWidth;
+    private final List<TsKvEntry> data;
+
+    private TsKvEntry first;
+    private TsKvEntry last;
+    private TsKvEntry selected;
+    private double selectedValue;
+
+    private Bucket pending = new Bucket();
+    private Bucket open = new Bucket();
+
+    public TsKvLttbDownsampler(long startTs, long endTs, int points) {
+        int bucketsCount = Math.max(1, points - 2);
+        this.startTs = startTs;
+        this.bucketWidth = Math.max(1.0, (double) (endTs - startTs) / bucketsCount);
+        this.data = new ArrayList<>(Math.max(points, 2));
+    }
+
+    @Override
+    public void add(TsKvEntry entry) {
+        if (Double.isNaN(TsKvDownsampler.toDouble(entry))) {
+            return;
+        }
+        if (first == null) {
+            first = entry;
+            select(entry);
+            return;
+        }
+        // the last entry is kept apart, so it is only known to be the last one once getData is called
+        if (last != null) {
+            addToBucket(last);
+        }
+        last = entry;
+    }
+
+    /**
+     * Completes the selection, must be called once after the last entry was added.
+     */
+    @Override
+    public List<TsKvEntry> getData() {
+        if (last == null) {
+            return data;
+        }
+        if (!open.isEmpty()) {
+            closeOpenBucket();
+        }
+        if (!pending.isEmpty()) {
+            selectFrom(pending, last.getTs() - startTs, TsKvDownsampler.toDouble(last));
+            pending.clear();
+        }
+        select(last);
+        last = null;
+        return data;
+    }
+
+    private void addToBucket(TsKvEntry entry) {
+        double offset = entry.getTs() - startTs - 1;
+        long bucket = (long) (offset / bucketWidth);
+        if (bucket != open.index && !open.isEmpty()) {
+            closeOpenBucket();
+        }
+        open.index = bucket;
+        int subBucket = (int) Math.min(SUB_BUCKETS - 1, Math.max(0, (offset - bucket * bucketWidth) * SUB_BUCKETS / bucketWidth));
+        open.add(entry, TsKvDownsampler.toDouble(entry), subBucket, entry.getTs() - startTs);
+    }
+
+    private void closeOpenBucket() {
+        if (!pending.isEmpty()) {
+            selectFrom(pending, open.sumTs / open.count, open.sumValue / open.count);
+        }
+        Bucket closed = pending;
+        pending = open;
+        open = closed;
+        open.clear();
+    }
+
+    private void selectFrom(Bucket bucket, double nextTs, double nextValue) {
+        double prevTs = selected.getTs() - startTs;
+        double maxArea = -1;
+        TsKvEntry best = null;
+        for (int i = 0; i < SUB_BUCKETS * 2; i++) {
+            TsKvEntry entry = bucket.candidates[i];
+            if (entry == null) {
+                continue;
+            }
+            double ts = entry.getTs() - startTs;
+            double value = bucket.values[i];
+            double area = Math.abs((prevTs - nextTs) * (value - selectedValue) - (prevTs - ts) * (nextValue - selectedValue));
+            if (area > maxArea) {
+                maxArea = area;
+                best = entry;
+            }
+        }
+        if (best != null) {
+            select(best);
+        }
+    }
+
+    private void select(TsKvEntry entry) {
+        data.add(entry);
+        selected = entry;
+        selectedValue = TsKvDownsampler.toDouble(entry);
+    }
+
+    /**
+     * Minimum entry of sub-bucket <code>i</code> at <code>2 * i</code>, maximum entry at <code>2 * i + 1</code>.
+     */
+    private static class Bucket {
+        private final TsKvEntry[] candidates = new TsKvEntry[SUB_BUCKETS * 2];
+        private final double[] values = new double[SUB_BUCKETS * 2];
+        private long index = -1;
+        private double sumTs;
+        private double sumValue;
+        private int count;
+
+        private void add(TsKvEntry entry, double value, int subBucket, double ts) {
+            int minIdx = subBucket * 2;
+            if (candidates[minIdx] == null || value < values[minIdx]) {
+                candidates[minIdx] = entry;
+                values[minIdx] = value;
+            }
+            if (candidates[minIdx + 1] == null || value > values[minIdx + 1]) {
+                candidates[minIdx + 1] = entry;
+                values[minIdx + 1] = value;
+            }
+            sumTs += ts;
+            sumValue += value;
+            count++;
+        }
+
+        private boolean isEmpty() {
+            return count == 0;
+        }
+
+        private void clear() {
+            Arrays.fill(candidates, null);
+            index = -1;
+            sumTs = 0;
+            sumValue = 0;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.thingsboard.server.dao.timeseries;
+
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the minimum and the maximum entry of each of <code>points / 2</code> equal time buckets.
+ */
+public class TsKvMinMaxDownsampler implements TsKvDownsampler {
+
+    private final long startTs;
+    private final double bucketWidth;
+    private final TsKvEntry[] min;
+    private final TsKvEntry[] max;
+    private final double[] minValue;
+    private final double[] maxValue;
+
+    public TsKvMinMaxDownsampler(long startTs, long endTs, int points) {
+        int bucketsCount = Math.max(1, points / 2);
+        this.startTs = startTs;
+        this.bucketWidth = Math.max(1.0, (double) (endTs - startTs) / bucketsCount);
+        this.min = new TsKvEntry[bucketsCount];
+        this.max = new TsKvEntry[bucketsCount];
+        this.minValue = new double[bucketsCount];
+        this.maxValue = new double[bucketsCount];
+    }
+
+    @Override
+    public void add(TsKvEntry entry) {
+        double value = TsKvDownsampler.toDouble(entry);
+        if (Double.isNaN(value)) {
+            return;
+        }
+        int bucket = (int) Math.min(min.length - 1, Math.max(0, (entry.getTs() - startTs - 1) / bucketWidth));
+        if (min[bucket] == null || value < minValue[bucket]) {
+            min[bucket] = entry;
+            minValue[bucket] = value;
+        }
+        if (max[bucket] == null || value > maxValue[bucket]) {
+            max[bucket] = entry;
+            maxValue[bucket] = value;
+        }
+    }
+
+    @Override
+    public List<TsKvEntry> getData() {
+        List<TsKvEntry> data = new ArrayList<>(min.length * 2);
+        for (int i = 0; i < min.length; i++) {
+            if (min[i] == null) {
+                continue;
+            }
+            if (min[i] == max[i]) {
+                data.add(min[i]);
+            } else if (min[i].getTs() <= max[i].getTs()) {
+                data.add(min[i]);
+                data.add(max[i]);
+            } else {
+                data.add(max[i]);
+                data.add(min[i]);
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,148 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.DESC_ORDER;
+
+/**
+ * Streams a single key partition by partition, holding at most one driver page in memory.
+ * Further pages are requested with {@link ResultSet#fetchMoreResults()} only after the current page was consumed.
+ */
+public class TsKvPartitionStream implements TsKvStream {
+
+    private final ListenableFuture<List<Long>> partitionsFuture;
+    private final PartitionReader partitionReader;
+    private final CompactedPartitionReader compactedPartitionReader;
+    private final Function<Row, TsKvEntry> converter;
+    private final Executor executor;
+    private final boolean desc;
+
+    private List<Long> partitions;
+    private int partitionIndex;
+    private int remaining;
+    private ResultSet current;
+    private TsKvStream compacted;
+    private volatile boolean closed;
+
+    public TsKvPartitionStream(ListenableFuture<List<Long>> partitionsFuture, String orderBy, int limit,
+                               PartitionReader partitionReader, Function<Row, TsKvEntry> converter, Executor executor) {
+        this(partitionsFuture, orderBy, limit, partitionReader, null, converter, executor);
+    }
+
+    /**
+     * @param compactedPartitionReader reads partitions that may be stored as compacted blocks, may be null
+     */
+    public TsKvPartitionStream(ListenableFuture<List<Long>> partitionsFuture, String orderBy, int limit,
+                               PartitionReader partitionReader, CompactedPartitionReader compactedPartitionReader,
+                               Function<Row, TsKvEntry> converter, Executor executor) {
+        this.partitionsFuture = partitionsFuture;
+        this.desc = DESC_ORDER.equals(orderBy);
+        this.remaining = limit;
+        this.partitionReader = partitionReader;
+        this.compactedPartitionReader = compactedPartitionReader;
+        this.converter = converter;
+        this.executor = executor;
+    }
+
+    @Override
+    public ListenableFuture<List<TsKvEntry>> nextPage() {
+        if (closed || remaining <= 0) {
+            return Futures.immediateFuture(Collections.emptyList());
+        }
+        if (partitions == null) {
+            return Futures.transformAsync(partitionsFuture, result -> {
+                partitions = result != null ? result : Collections.emptyList();
+                partitionIndex = desc ? partitions.size() - 1 : 0;
+                return nextPage();
+            }, executor);
+        }
+        if (current != null) {
+            if (current.getAvailableWithoutFetching() > 0) {
+                return Futures.immediateFuture(drainAvailable());
+            }
+            if (!current.isFullyFetched()) {
+                return Futures.transformAsync(current.fetchMoreResults(), rs -> nextPage(), executor);
+            }
+            current = null;
+        }
+        if (compacted != null) {
+            return Futures.transformAsync(compacted.nextPage(), page -> {
+                if (page == null || page.isEmpty()) {
+                    compacted.close();
+                    compacted = null;
+                    return nextPage();
+                }
+                remaining -= page.size();
+                return Futures.immediateFuture(page);
+            }, executor);
+        }
+        if (!hasNextPartition()) {
+            return Futures.immediateFuture(Collections.emptyList());
+        }
+        long partition = nextPartition();
+        if (compactedPartitionReader != null && compactedPartitionReader.isCompacted(partition)) {
+            compacted = compactedPartitionReader.open(partition, remaining);
+            return nextPage();
+        }
+        return Futures.transformAsync(partitionReader.read(partition, remaining), rs -> {
+            current = rs;
+            return nextPage();
+        }, executor);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        current = null;
+        if (compacted != null) {
+            compacted.close();
+        }
+    }
+
+    private List<TsKvEntry> drainAvailable() {
+        int available = Math.min(current.getAvailableWithoutFetching(), remaining);
+        List<TsKvEntry> page = new ArrayList<>(available);
+        for (int i = 0; i < available; i++) {
+            page.add(converter.apply(current.one()));
+        }
+        remaining -= available;
+        return page;
+    }
+
+    private boolean hasNextPartition() {
+        return desc ? partitionIndex >= 0 : partitionIndex < partitions.size();
+    }
+
+    private long nextPartition() {
+        long partition = partitions.get(partitionIndex);
+        partitionIndex += desc ? -1 : 1;
+        return partition;
+    }
+
+    public interface PartitionReader {
+
+        ListenableFuture<ResultSet> read(long partition, int limit);
+
+    }
+
+    public interface CompactedPartitionReader {
+
+        boolean isCompacted(long partition);
+
+        /**
+         * @return stream of at most <code>limit</code> entries of the partition in the order of the stream
+         */
+        TsKvStream open(long partition, int limit);
+
+    }
+}
@@ -1,11 +1,14 @@
 package org.thingsboard.server.dao.timeseries;
 
+import com.google.common.util.concurrent.ListenableFuture;
 import lombok.Getter;
 import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
 import org.thingsboard.server.common.data.kv.TsKvEntry;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.UUID;
 
 import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.DESC_ORDER;
@@ -23,12 +26,24 @@ public class TsKvQueryCursor extends QueryCursor {
     private int partitionIndex;
     private int currentLimit;
 
+    private final int readAhead;
+    private final Queue<ListenableFuture<List<TsKvEntry>>> pendingReads;
+
     public TsKvQueryCursor(String entityType, UUID entityId, ReadTsKvQuery baseQuery, List<Long> partitions) {
+        this(entityType, entityId, baseQuery, partitions, 0);
+    }
+
+    /**
+     * @param readAhead number of partitions that may be read speculatively in addition to the one being awaited
+     */
+    public TsKvQueryCursor(String entityType, UUID entityId, ReadTsKvQuery baseQuery, List<Long> partitions, int readAhead) {
         super(entityType, entityId, baseQuery, partitions);
         this.orderBy = baseQuery.getOrderBy();
         this.partitionIndex = isDesc() ? partitions.size() - 1 : 0;
         this.data = new ArrayList<>();
         this.currentLimit = baseQuery.getLimit();
+        this.readAhead = readAhead;
+        this.pendingReads = new ArrayDeque<>(readAhead + 1);
     }
 
     @Override
@@ -56,10 +71,39 @@ public class TsKvQueryCursor extends QueryCursor {
     }
 
     public void addData(List<TsKvEntry> newData) {
+        if (newData.size() > currentLimit) {
+            newData = newData.subList(0, Math.max(currentLimit, 0));
+        }
         currentLimit -= newData.size();
         data.addAll(newData);
     }
 
+    public boolean canReadAhead() {
+        return hasNextPartition() && pendingReads.size() <= readAhead;
+    }
+
+    public void addPendingRead(ListenableFuture<List<TsKvEntry>> read) {
+        pendingReads.add(read);
+    }
+
+    public boolean hasPendingReads() {
+        return !pendingReads.isEmpty();
+    }
+
+    /**
+     * @return the read of the earliest issued partition, so data is always added in partition order
+     */
+    public ListenableFuture<List<TsKvEntry>> pollPendingRead() {
+        return pendingReads.poll();
+    }
+
+    public void cancelPendingReads() {
+        ListenableFuture<List<TsKvEntry>> read;
+        while ((read = pendingReads.poll()) != null) {
+            read.cancel(true);
+        }
+    }
+
     private boolean isDesc() {
         return orderBy.equals(DESC_ORDER);
     }
@@ -0,0 +1,188 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Row;
+import org.thingsboard.server.common.data.kv.KvEntry;
+
+/**
+ * Partial aggregate of the points of one key within one rollup bucket.
+ * Partials are written as separate rows and merged on read, so open buckets never need read-modify-write.
+ * Once a bucket is closed its partials are merged into a single row:
+ * <pre>
+ * CREATE TABLE IF NOT EXISTS ts_kv_rollup_cf (
+ *     entity_type text, entity_id timeuuid, key text, resolution text, partition bigint, ts bigint, partial_id timeuuid,
+ *     long_cnt bigint, double_cnt bigint, bool_cnt bigint, str_cnt bigint,
+ *     long_sum bigint, long_min bigint, long_max bigint,
+ *     double_sum double, double_min double, double_max double,
+ *     bool_min boolean, bool_max boolean, str_min text, str_max text,
+ *     PRIMARY KEY (( entity_type, entity_id, key, resolution, partition ), ts, partial_id)
+ * );
+ * </pre>
+ */
+public class TsKvRollup {
+
+    public static final String TS_KV_ROLLUP_CF = "ts_kv_rollup_cf";
+    public static final String RESOLUTION_COLUMN = "resolution";
+    public static final String PARTIAL_ID_COLUMN = "partial_id";
+    public static final String LONG_COUNT_COLUMN = "long_cnt";
+    public static final String DOUBLE_COUNT_COLUMN = "double_cnt";
+    public static final String BOOL_COUNT_COLUMN = "bool_cnt";
+    public static final String STR_COUNT_COLUMN = "str_cnt";
+    public static final String LONG_SUM_COLUMN = "long_sum";
+    public static final String LONG_MIN_COLUMN = "long_min";
+    public static final String LONG_MAX_COLUMN = "long_max";
+    public static final String DOUBLE_SUM_COLUMN = "double_sum";
+    public static final String DOUBLE_MIN_COLUMN = "double_min";
+    public static final String DOUBLE_MAX_COLUMN = "double_max";
+    public static final String BOOL_MIN_COLUMN = "bool_min";
+    public static final String BOOL_MAX_COLUMN = "bool_max";
+    public static final String STR_MIN_COLUMN = "str_min";
+    public static final String STR_MAX_COLUMN = "str_max";
+
+    public static final String[] VALUE_COLUMNS = {
+            LONG_COUNT_COLUMN, DOUBLE_COUNT_COLUMN, BOOL_COUNT_COLUMN, STR_COUNT_COLUMN,
+            LONG_SUM_COLUMN, LONG_MIN_COLUMN, LONG_MAX_COLUMN,
+            DOUBLE_SUM_COLUMN, DOUBLE_MIN_COLUMN, DOUBLE_MAX_COLUMN,
+            BOOL_MIN_COLUMN, BOOL_MAX_COLUMN, STR_MIN_COLUMN, STR_MAX_COLUMN};
+
+    private long longCount;
+    private long doubleCount;
+    private long boolCount;
+    private long strCount;
+    private long longSum;
+    private long longMin = Long.MAX_VALUE;
+    private long longMax = Long.MIN_VALUE;
+    private double doubleSum;
+    private double doubleMin = Double.MAX_VALUE;
+    private double doubleMax = -Double.MAX_VALUE;
+    private boolean boolMin = true;
+    private boolean boolMax = false;
+    private String strMin;
+    private String strMax;
+    private long ttl = -1;
+
+    public void add(KvEntry entry, long entryTtl) {
+        switch (entry.getDataType()) {
+            case LONG:
+                long longValue = entry.getLongValue().orElse(0L);
+                longCount++;
+                longSum += longValue;
+                longMin = Math.min(longMin, longValue);
+                longMax = Math.max(longMax, longValue);
+                break;
+            case DOUBLE:
+                double doubleValue = entry.getDoubleValue().orElse(0.0);
+                doubleCount++;
+                doubleSum += doubleValue;
+                doubleMin = Math.min(doubleMin, doubleValue);
+                doubleMax = Math.max(doubleMax, doubleValue);
+                break;
+            case BOOLEAN:
+                boolean boolValue = entry.getBooleanValue().orElse(false);
+                boolCount++;
+                boolMin = boolMin && boolValue;
+                boolMax = boolMax || boolValue;
+                break;
+            case STRING:
+                String strValue = entry.getStrValue().orElse("");
+                strCount++;
+                strMin = strMin == null || strValue.compareTo(strMin) < 0 ? strValue : strMin;
+                strMax = strMax == null || strValue.compareTo(strMax) > 0 ? strValue : strMax;
+                break;
+        }
+        ttl = ttl == 0 || entryTtl == 0 ? 0 : Math.max(ttl, entryTtl);
+    }
+
+    /**
+     * Adds the points of another partial of the same bucket.
+     */
+    public void merge(TsKvRollup other) {
+        longCount += other.longCount;
+        longSum += other.longSum;
+        longMin = Math.min(longMin, other.longMin);
+        longMax = Math.max(longMax, other.longMax);
+        doubleCount += other.doubleCount;
+        doubleSum += other.doubleSum;
+        doubleMin = Math.min(doubleMin, other.doubleMin);
+        doubleMax = Math.max(doubleMax, other.doubleMax);
+        boolCount += other.boolCount;
+        boolMin = boolMin && other.boolMin;
+        boolMax = boolMax || other.boolMax;
+        strCount += other.strCount;
+        strMin = strMin == null || (other.strMin != null && other.strMin.compareTo(strMin) < 0) ? other.strMin : strMin;
+        strMax = strMax == null || (other.strMax != null && other.strMax.compareTo(strMax) > 0) ? other.strMax : strMax;
+        ttl = ttl == 0 || other.ttl == 0 ? 0 : Math.max(ttl, other.ttl);
+    }
+
+    /**
+     * Reads a partial written with {@link #bind}.
+     *
+     * @param rowTtl remaining TTL of the row in seconds, 0 if the row has none
+     */
+    public static TsKvRollup fromRow(Row row, long rowTtl) {
+        TsKvRollup rollup = new TsKvRollup();
+        rollup.longCount = row.getLong(LONG_COUNT_COLUMN);
+        rollup.doubleCount = row.getLong(DOUBLE_COUNT_COLUMN);
+        rollup.boolCount = row.getLong(BOOL_COUNT_COLUMN);
+        rollup.strCount = row.getLong(STR_COUNT_COLUMN);
+        if (rollup.longCount > 0) {
+            rollup.longSum = row.getLong(LONG_SUM_COLUMN);
+            rollup.longMin = row.getLong(LONG_MIN_COLUMN);
+            rollup.longMax = row.getLong(LONG_MAX_COLUMN);
+        }
+        if (rollup.doubleCount > 0) {
+            rollup.doubleSum = row.getDouble(DOUBLE_SUM_COLUMN);
+            rollup.doubleMin = row.getDouble(DOUBLE_MIN_COLUMN);
+            rollup.doubleMax = row.getDouble(DOUBLE_MAX_COLUMN);
+        }
+        if (rollup.boolCount > 0) {
+            rollup.boolMin = row.getBool(BOOL_MIN_COLUMN);
+            rollup.boolMax = row.getBool(BOOL_MAX_COLUMN);
+        }
+        if (rollup.strCount > 0) {
+            rollup.strMin = row.getString(STR_MIN_COLUMN);
+            rollup.strMax = row.getString(STR_MAX_COLUMN);
+        }
+        rollup.ttl = rowTtl;
+        return rollup;
+    }
+
+    public boolean isEmpty() {
+        return longCount + doubleCount + boolCount + strCount == 0;
+    }
+
+    /**
+     * @return TTL of the partial in seconds: 0 if any of the points has no TTL, the longest TTL otherwise
+     */
+    public long getTtl() {
+        return Math.max(ttl, 0);
+    }
+
+    /**
+     * Binds {@link #VALUE_COLUMNS} starting from the given index.
+     */
+    public void bind(BoundStatement stmt, int from) {
+        stmt.setLong(from, longCount);
+        stmt.setLong(from + 1, doubleCount);
+        stmt.setLong(from + 2, boolCount);
+        stmt.setLong(from + 3, strCount);
+        if (longCount > 0) {
+            stmt.setLong(from + 4, longSum);
+            stmt.setLong(from + 5, longMin);
+            stmt.setLong(from + 6, longMax);
+        }
+        if (doubleCount > 0) {
+            stmt.setDouble(from + 7, doubleSum);
+            stmt.setDouble(from + 8, doubleMin);
+            stmt.setDouble(from + 9, doubleMax);
+        }
+        if (boolCount > 0) {
+            stmt.setBool(from + 10, boolMin);
+            stmt.setBool(from + 11, boolMax);
+        }
+        if (strCount > 0) {
+            stmt.setString(from + 12, strMin);
+            stmt.setString(from + 13, strMax);
+        }
+    }
+}
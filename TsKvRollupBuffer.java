@@ -0,0 +1,92 @@
+package org.thingsboard.server.dao.timeseries;
+
+import lombok.Data;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Accumulates rollup partials of ingested points in memory until they are drained and written.
+ * A point is folded into a partial at most once per ts, so a point written again before the partial is drained,
+ * e.g. a retried write, is not counted twice. A point written again after its partial was drained is counted again
+ * and a changed value of a ts keeps the value folded first, so rollups of rewritten points are approximate.
+ */
+public class TsKvRollupBuffer {
+
+    private final ConcurrentMap<RollupKey, PendingRollup> rollups = new ConcurrentHashMap<>();
+
+    public void add(TenantId tenantId, EntityId entityId, TsKvEntry entry, long ttl) {
+        for (TsRollupResolution resolution : TsRollupResolution.values()) {
+            RollupKey key = new RollupKey(entityId, entry.getKey(), resolution, resolution.toBucketEndTs(entry.getTs()));
+            rollups.compute(key, (k, pending) -> {
+                if (pending == null) {
+                    pending = new PendingRollup(tenantId, k, new TsKvRollup());
+                }
+                if (pending.getFoldedTs().add(entry.getTs())) {
+                    pending.getRollup().add(entry, ttl);
+                }
+                return pending;
+            });
+        }
+    }
+
+    /**
+     * Returns a drained partial that failed to be written, merging it with the points added since.
+     */
+    public void putBack(PendingRollup pending) {
+        rollups.compute(pending.getKey(), (k, current) -> {
+            if (current == null) {
+                return pending;
+            }
+            current.getRollup().merge(pending.getRollup());
+            current.getFoldedTs().addAll(pending.getFoldedTs());
+            return current;
+        });
+    }
+
+    /**
+     * Drops the partials of the key with buckets overlapping (startTs, endTs].
+     */
+    public void remove(EntityId entityId, String key, long startTs, long endTs) {
+        rollups.keySet().removeIf(k -> k.getEntityId().equals(entityId) && k.getKey().equals(key)
+                && k.getBucketEndTs() - k.getResolution().getDuration() < endTs && k.getBucketEndTs() > startTs);
+    }
+
+    public int size() {
+        return rollups.size();
+    }
+
+    public List<PendingRollup> drain() {
+        List<PendingRollup> drained = new ArrayList<>(rollups.size());
+        for (RollupKey key : rollups.keySet()) {
+            PendingRollup pending = rollups.remove(key);
+            if (pending != null) {
+                drained.add(pending);
+            }
+        }
+        return drained;
+    }
+
+    @Data
+    public static class RollupKey {
+        private final EntityId entityId;
+        private final String key;
+        private final TsRollupResolution resolution;
+        private final long bucketEndTs;
+    }
+
+    @Data
+    public static class PendingRollup {
+        private final TenantId tenantId;
+        private final RollupKey key;
+        private final TsKvRollup rollup;
+        private final Set<Long> foldedTs = new HashSet<>();
+    }
+}
@@ -0,0 +1,517 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.utils.UUIDs;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.Aggregation;
+import org.thingsboard.server.common.data.kv.BaseReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.DeleteTsKvQuery;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.ModelConstants;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.ASC_ORDER;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.EQUALS_PARAM;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.INSERT_INTO;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.SELECT_PREFIX;
+import static org.thingsboard.server.dao.timeseries.CassandraBaseTimeseriesDao.toKvEntry;
+
+/**
+ * Buffers {@link TsKvRollup} partials of the saved points in a {@link TsKvRollupBuffer}, flushes them periodically and
+ * merges the partials of closed buckets. Created by {@link CassandraBaseTimeseriesDao} if rollups are enabled.
+ */
+@Slf4j
+public class TsKvRollupStore {
+
+    private static final String CLEAN_STATE = "clean";
+    private static final String RUNNING_STATE = "running";
+
+    private final CassandraBaseTimeseriesDao dao;
+    private final Executor executor;
+    private final long flushIntervalMs;
+    private final int maxSize;
+    private final String stateFile;
+    private final long availableFromTs;
+
+    private final TsKvRollupBuffer buffer = new TsKvRollupBuffer();
+    private final ScheduledExecutorService flushExecutor;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private volatile ListenableFuture<Void> flushFuture = Futures.immediateFuture(null);
+    private volatile long durableTs;
+    private final Map<TsKvRollupBuffer.RollupKey, TenantId> unmergedRollups = new ConcurrentHashMap<>();
+
+    private PreparedStatement rollupInsertStmt;
+    private PreparedStatement rollupInsertTtlStmt;
+    private PreparedStatement rollupFetchStmt;
+    private PreparedStatement rollupDeleteStmt;
+    private PreparedStatement rollupBucketFetchStmt;
+    private PreparedStatement rollupPartialDeleteStmt;
+
+    public TsKvRollupStore(CassandraBaseTimeseriesDao dao, Executor executor, long flushIntervalMs, int maxSize, long availableFromTs, String stateFile) {
+        this.dao = dao;
+        this.executor = executor;
+        this.flushIntervalMs = flushIntervalMs;
+        this.maxSize = maxSize;
+        this.stateFile = stateFile;
+        long now = System.currentTimeMillis();
+        this.availableFromTs = loadAvailableFromTs(availableFromTs, now);
+        this.durableTs = now;
+        storeState(RUNNING_STATE);
+        flushExecutor = Executors.newSingleThreadScheduledExecutor();
+        flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Flushes the buffered partials and marks the rollups as clean in the state file if all of them were written.
+     */
+    public void stop() {
+        flushExecutor.shutdownNow();
+        try {
+            // the flush still in flight first, then the partials buffered since
+            flushFuture.get(flushIntervalMs + 10000, TimeUnit.MILLISECONDS);
+            flush().get(flushIntervalMs + 10000, TimeUnit.MILLISECONDS);
+            if (buffer.size() == 0) {
+                storeState(CLEAN_STATE);
+            } else {
+                log.warn("Failed to flush {} pending rollups", buffer.size());
+            }
+        } catch (Exception e) {
+            log.warn("Failed to flush pending rollups", e);
+        }
+    }
+
+    /**
+     * @return the start of the first bucket of the resolution whose rollups are complete
+     */
+    public long getReadableStartTs(TsRollupResolution resolution) {
+        return resolution.alignUp(availableFromTs);
+    }
+
+    /**
+     * @return the end of the last bucket of the resolution whose rollups are durable
+     */
+    public long getReadableEndTs(TsRollupResolution resolution) {
+        return resolution.alignDown(durableTs - flushIntervalMs);
+    }
+
+    /**
+     * Folds the entries into the rollup buffer once their raw write succeeded, so a failed or rejected write
+     * does not show up in the rollups.
+     */
+    public ListenableFuture<Void> addOnSave(TenantId tenantId, EntityId entityId, List<TsKvEntry> entries, long ttl, ListenableFuture<Void> writeFuture) {
+        return Futures.transform(writeFuture, result -> {
+            entries.forEach(entry -> add(tenantId, entityId, entry, ttl));
+            return result;
+        }, executor);
+    }
+
+    private void add(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry, long ttl) {
+        buffer.add(tenantId, entityId, tsKvEntry, ttl);
+        if (buffer.size() >= maxSize && flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.submit(this::flush);
+        }
+    }
+
+    /**
+     * Rollups are complete from <code>cassandra.query.ts_rollups.available_from_ts</code>, but not before the ts
+     * recorded in the state file by the previous run. If the previous run did not flush all partials on shutdown,
+     * the partials buffered at the time are lost and rollups are only complete for points ingested from now on.
+     * The state file has to be removed to move the ts back, e.g. after the rollups of older points were rebuilt.
+     */
+    private long loadAvailableFromTs(long configuredTs, long now) {
+        Path statePath = Paths.get(stateFile);
+        if (!Files.exists(statePath)) {
+            return configuredTs > 0 ? configuredTs : now;
+        }
+        try {
+            String[] state = new String(Files.readAllBytes(statePath), StandardCharsets.UTF_8).trim().split(" ");
+            if (state.length == 2 && CLEAN_STATE.equals(state[1])) {
+                return Math.max(configuredTs, Long.parseLong(state[0]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Failed to read timeseries rollups state from {}", stateFile, e);
+        }
+        log.warn("Timeseries rollups were not flushed on the last shutdown, rollups are available for points since {}", now);
+        return now;
+    }
+
+    private void storeState(String state) {
+        try {
+            Files.write(Paths.get(stateFile), (availableFromTs + " " + state).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            log.error("Failed to write timeseries rollups state to {}", stateFile, e);
+        }
+    }
+
+    /**
+     * Writes the buffered partials, with at most one flush in flight. Partials are written as new rows, those of closed
+     * buckets are then merged with the rows written before, as are open buckets written to before that have closed
+     * since. Partials that fail to be written are put back into the buffer. Rollups are durable up to the start of the
+     * last flush that wrote all of its partials.
+     */
+    private ListenableFuture<Void> flush() {
+        synchronized (flushLock) {
+            if (!flushFuture.isDone()) {
+                return flushFuture;
+            }
+            flushScheduled.set(false);
+            long flushTs = System.currentTimeMillis();
+            long closedBucketEndTs = flushTs - 2 * flushIntervalMs;
+            List<TsKvRollupBuffer.PendingRollup> rollups = buffer.drain();
+            log.trace("Flushing {} rollups", rollups.size());
+            List<ListenableFuture<Boolean>> futures = new ArrayList<>(rollups.size());
+            for (TsKvRollupBuffer.PendingRollup pending : rollups) {
+                TsKvRollupBuffer.RollupKey key = pending.getKey();
+                if (key.getBucketEndTs() <= closedBucketEndTs) {
+                    unmergedRollups.remove(key);
+                    TenantId tenantId = pending.getTenantId();
+                    futures.add(Futures.transformAsync(onRollupFlushed(pending, saveRollup(tenantId, key, pending.getRollup())),
+                            saved -> saved ? onRollupMerged(tenantId, key, mergeRollup(tenantId, key)) : Futures.immediateFuture(Boolean.FALSE),
+                            MoreExecutors.directExecutor()));
+                } else {
+                    unmergedRollups.put(key, pending.getTenantId());
+                    futures.add(onRollupFlushed(pending, saveRollup(pending.getTenantId(), key, pending.getRollup())));
+                }
+            }
+            Iterator<Map.Entry<TsKvRollupBuffer.RollupKey, TenantId>> unmerged = unmergedRollups.entrySet().iterator();
+            while (unmerged.hasNext()) {
+                Map.Entry<TsKvRollupBuffer.RollupKey, TenantId> entry = unmerged.next();
+                if (entry.getKey().getBucketEndTs() <= closedBucketEndTs) {
+                    unmerged.remove();
+                    futures.add(onRollupMerged(entry.getValue(), entry.getKey(), mergeRollup(entry.getValue(), entry.getKey())));
+                }
+            }
+            flushFuture = Futures.transform(Futures.allAsList(futures), results -> {
+                if (!results.contains(Boolean.FALSE)) {
+                    durableTs = Math.max(durableTs, flushTs);
+                }
+                return null;
+            }, executor);
+            return flushFuture;
+        }
+    }
+
+    /**
+     * @return whether the partial was written, the partial is put back into the buffer otherwise
+     */
+    private ListenableFuture<Boolean> onRollupFlushed(TsKvRollupBuffer.PendingRollup pending, ListenableFuture<Void> future) {
+        return Futures.catching(Futures.transform(future, result -> Boolean.TRUE, executor), Throwable.class, t -> {
+            buffer.putBack(pending);
+            return Boolean.FALSE;
+        }, executor);
+    }
+
+    /**
+     * The partials of a bucket that failed to be merged stay readable as they are, the bucket is merged with the next flush.
+     */
+    private ListenableFuture<Boolean> onRollupMerged(TenantId tenantId, TsKvRollupBuffer.RollupKey key, ListenableFuture<Void> future) {
+        return Futures.catching(Futures.transform(future, result -> Boolean.TRUE, executor), Throwable.class, t -> {
+            unmergedRollups.putIfAbsent(key, tenantId);
+            return Boolean.TRUE;
+        }, executor);
+    }
+
+    private ListenableFuture<Void> saveRollup(TenantId tenantId, TsKvRollupBuffer.RollupKey key, TsKvRollup rollup) {
+        ListenableFuture<Void> future = dao.writeAsync(tenantId, getRollupInsertBoundStmt(key, rollup, UUIDs.timeBased()));
+        Futures.addCallback(future, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}] Failed to save {} rollup of key {} for bucket {}", key.getEntityId(), key.getResolution(), key.getKey(), key.getBucketEndTs(), t);
+            }
+        }, executor);
+        return future;
+    }
+
+    /**
+     * Replaces the partials written for a closed bucket with a single row. The row and the deletes of the partials it
+     * replaces go in one single partition batch, so readers see either. The merged row has the same partial id for every
+     * merge of the bucket, so merges of the same partials running on several nodes overwrite each other's row instead of
+     * adding up, and a later merge folds the row in and overwrites it.
+     */
+    private ListenableFuture<Void> mergeRollup(TenantId tenantId, TsKvRollupBuffer.RollupKey key) {
+        BoundStatement stmt = bindRollupBucket(getRollupBucketFetchStmt().bind(), key);
+        log.debug(GENERATED_QUERY_FOR_ENTITY_TYPE_AND_ENTITY_ID, stmt, key.getEntityId().getEntityType(), key.getEntityId().getId());
+        ListenableFuture<Void> future = Futures.transformAsync(dao.readAsync(tenantId, stmt), rs -> {
+            List<Row> rows = rs.all();
+            if (rows.size() < 2) {
+                return Futures.immediateFuture(null);
+            }
+            UUID mergedId = toMergedRollupId(key);
+            TsKvRollup merged = new TsKvRollup();
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            for (Row row : rows) {
+                merged.merge(TsKvRollup.fromRow(row, row.isNull(1) ? 0 : row.getInt(1)));
+                // the statements of a batch share one timestamp and a delete wins over an insert of the same timestamp
+                if (!mergedId.equals(row.getUUID(0))) {
+                    batch.add(bindRollupBucket(getRollupPartialDeleteStmt().bind(), key).setUUID(6, row.getUUID(0)));
+                }
+            }
+            batch.add(getRollupInsertBoundStmt(key, merged, mergedId));
+            return dao.writeAsync(tenantId, batch);
+        }, executor);
+        Futures.addCallback(future, new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                log.error("[{}] Failed to merge {} rollup of key {} for bucket {}", key.getEntityId(), key.getResolution(), key.getKey(), key.getBucketEndTs(), t);
+            }
+        }, executor);
+        return future;
+    }
+
+    /**
+     * Time based, as the partial id is a timeuuid, and derived from the bucket only.
+     */
+    private static UUID toMergedRollupId(TsKvRollupBuffer.RollupKey key) {
+        return UUIDs.startOf(key.getBucketEndTs());
+    }
+
+    private BoundStatement getRollupInsertBoundStmt(TsKvRollupBuffer.RollupKey key, TsKvRollup rollup, UUID partialId) {
+        long ttl = rollup.getTtl();
+        BoundStatement stmt = bindRollupBucket((ttl == 0 ? getRollupInsertStmt() : getRollupInsertTtlStmt()).bind(), key);
+        stmt.setUUID(6, partialId);
+        rollup.bind(stmt, 7);
+        if (ttl > 0) {
+            stmt.setInt(7 + TsKvRollup.VALUE_COLUMNS.length, (int) ttl);
+        }
+        return stmt;
+    }
+
+    /**
+     * Binds the primary key of the bucket up to the ts, at indexes 0 to 5.
+     */
+    private static BoundStatement bindRollupBucket(BoundStatement stmt, TsKvRollupBuffer.RollupKey key) {
+        return stmt.setString(0, key.getEntityId().getEntityType().name())
+                .setUUID(1, key.getEntityId().getId())
+                .setString(2, key.getKey())
+                .setString(3, key.getResolution().name())
+                .setLong(4, key.getResolution().toPartitionTs(key.getBucketEndTs()))
+                .setLong(5, key.getBucketEndTs());
+    }
+
+    /**
+     * Drops the buffered partials that overlap the deleted range and, once the flush in flight completed, deletes the
+     * rollup buckets that overlap it. The edge buckets, which are only partially covered by the range, are then rebuilt
+     * from the raw points that remain in them. The range is bounded by the raw partitions of the key, so rollup
+     * partitions are not enumerated past the data of the key.
+     */
+    public ListenableFuture<Void> remove(TenantId tenantId, EntityId entityId, DeleteTsKvQuery query, TsPartitioningSchedule partitioning,
+                                         List<Long> partitions) {
+        buffer.remove(entityId, query.getKey(), query.getStartTs(), query.getEndTs());
+        long dataEndTs = partitions.isEmpty() ? query.getStartTs() : partitioning.toNextPartitionTs(partitions.get(partitions.size() - 1));
+        if (dataEndTs == Long.MAX_VALUE) {
+            // a single partition holds all points, only rollups of points more than a day ahead of the clock are kept
+            dataEndTs = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+        }
+        long queryEndTs = Math.min(query.getEndTs(), dataEndTs);
+        return Futures.transformAsync(flushFuture, flushed -> {
+            // partials of the flush that failed to be written are back in the buffer by now
+            buffer.remove(entityId, query.getKey(), query.getStartTs(), query.getEndTs());
+            List<ListenableFuture<Void>> futures = new ArrayList<>();
+            for (TsRollupResolution resolution : TsRollupResolution.values()) {
+                long startTs = Math.max(query.getStartTs(), resolution.alignDown(availableFromTs));
+                long endTs = queryEndTs > Long.MAX_VALUE - resolution.getDuration() ? Long.MAX_VALUE : queryEndTs + resolution.getDuration();
+                if (startTs >= endTs) {
+                    continue;
+                }
+                List<ListenableFuture<Void>> deletes = new ArrayList<>();
+                for (Long partition : resolution.partitionsBetween(startTs, endTs)) {
+                    BoundStatement stmt = getRollupDeleteStmt().bind();
+                    stmt.setString(0, entityId.getEntityType().name())
+                            .setUUID(1, entityId.getId())
+                            .setString(2, query.getKey())
+                            .setString(3, resolution.name())
+                            .setLong(4, partition)
+                            .setLong(5, startTs)
+                            .setLong(6, endTs);
+                    deletes.add(dao.writeAsync(tenantId, stmt));
+                }
+                futures.add(Futures.transformAsync(Futures.allAsList(deletes),
+                        result -> rebuildRollupEdges(tenantId, entityId, query.getKey(), query.getStartTs(), queryEndTs, resolution), executor));
+            }
+            return Futures.transform(Futures.allAsList(futures), result -> null, executor);
+        }, executor);
+    }
+
+    private ListenableFuture<Void> rebuildRollupEdges(TenantId tenantId, EntityId entityId, String key, long startTs, long endTs, TsRollupResolution resolution) {
+        long leftBucketEndTs = resolution.toBucketEndTs(startTs + 1);
+        long rightBucketEndTs = resolution.toBucketEndTs(endTs);
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        futures.add(rebuildRollup(tenantId, entityId, key, resolution, leftBucketEndTs,
+                leftBucketEndTs - resolution.getDuration(), startTs));
+        futures.add(rebuildRollup(tenantId, entityId, key, resolution, rightBucketEndTs,
+                endTs, rightBucketEndTs));
+        return Futures.transform(Futures.allAsList(futures), result -> null, executor);
+    }
+
+    /**
+     * Writes a partial of the raw points in (startTs, endTs] of a single rollup bucket.
+     */
+    private ListenableFuture<Void> rebuildRollup(TenantId tenantId, EntityId entityId, String key, TsRollupResolution resolution,
+                                                 long bucketEndTs, long startTs, long endTs) {
+        startTs = Math.max(startTs, availableFromTs);
+        if (startTs >= endTs) {
+            return Futures.immediateFuture(null);
+        }
+        TsKvRollup rollup = new TsKvRollup();
+        long ttl = dao.computeTtl(0);
+        ReadTsKvQuery query = new BaseReadTsKvQuery(key, startTs, endTs, 0, Integer.MAX_VALUE, Aggregation.NONE, ASC_ORDER);
+        Consumer<KvEntry> rollupConsumer = entry -> {
+            synchronized (rollup) {
+                rollup.add(entry, ttl);
+            }
+        };
+        ListenableFuture<List<Void>> folded = dao.foldRawRows(tenantId, entityId, query, startTs, endTs, row -> {
+            KvEntry entry = toKvEntry(row, key);
+            if (entry != null) {
+                rollupConsumer.accept(entry);
+            }
+        }, rollupConsumer::accept);
+        return Futures.transformAsync(folded, result -> rollup.isEmpty() ? Futures.immediateFuture(null) :
+                saveRollup(tenantId, new TsKvRollupBuffer.RollupKey(entityId, key, resolution, bucketEndTs), rollup), executor);
+    }
+
+    public ListenableFuture<List<Void>> fold(TenantId tenantId, EntityId entityId, TsKvBucketAggregator aggregator, TsRollupResolution resolution, long startTs, long endTs) {
+        PreparedStatement proto = getRollupFetchStmt();
+        List<ListenableFuture<Void>> futures = new ArrayList<>();
+        for (Long partition : resolution.partitionsBetween(startTs, endTs)) {
+            BoundStatement stmt = proto.bind();
+            stmt.setString(0, entityId.getEntityType().name());
+            stmt.setUUID(1, entityId.getId());
+            stmt.setString(2, aggregator.getKey());
+            stmt.setString(3, resolution.name());
+            stmt.setLong(4, partition);
+            stmt.setLong(5, startTs);
+            stmt.setLong(6, endTs);
+            futures.add(dao.fetchAndFold(tenantId, entityId, stmt, aggregator::processRollupRow));
+        }
+        return Futures.allAsList(futures);
+    }
+
+    private PreparedStatement getRollupInsertStmt() {
+        if (rollupInsertStmt == null) {
+            rollupInsertStmt = dao.prepareStatement(getRollupInsertQuery());
+        }
+        return rollupInsertStmt;
+    }
+
+    private PreparedStatement getRollupInsertTtlStmt() {
+        if (rollupInsertTtlStmt == null) {
+            rollupInsertTtlStmt = dao.prepareStatement(getRollupInsertQuery() + " USING TTL ?");
+        }
+        return rollupInsertTtlStmt;
+    }
+
+    private static String getRollupInsertQuery() {
+        return INSERT_INTO + TsKvRollup.TS_KV_ROLLUP_CF +
+                "(" + ModelConstants.ENTITY_TYPE_COLUMN +
+                "," + ModelConstants.ENTITY_ID_COLUMN +
+                "," + ModelConstants.KEY_COLUMN +
+                "," + TsKvRollup.RESOLUTION_COLUMN +
+                "," + ModelConstants.PARTITION_COLUMN +
+                "," + ModelConstants.TS_COLUMN +
+                "," + TsKvRollup.PARTIAL_ID_COLUMN +
+                "," + String.join(",", TsKvRollup.VALUE_COLUMNS) + ")" +
+                " VALUES(?, ?, ?, ?, ?, ?, ?" + String.join("", Collections.nCopies(TsKvRollup.VALUE_COLUMNS.length, ", ?")) + ")";
+    }
+
+    private PreparedStatement getRollupBucketFetchStmt() {
+        if (rollupBucketFetchStmt == null) {
+            rollupBucketFetchStmt = dao.prepareStatement(SELECT_PREFIX +
+                    TsKvRollup.PARTIAL_ID_COLUMN + ",TTL(" + TsKvRollup.LONG_COUNT_COLUMN + ")," +
+                    String.join(",", TsKvRollup.VALUE_COLUMNS) + " " +
+                    "FROM " + TsKvRollup.TS_KV_ROLLUP_CF + " " +
+                    "WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM +
+                    "AND " + TsKvRollup.RESOLUTION_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.TS_COLUMN + EQUALS_PARAM);
+        }
+        return rollupBucketFetchStmt;
+    }
+
+    private PreparedStatement getRollupPartialDeleteStmt() {
+        if (rollupPartialDeleteStmt == null) {
+            rollupPartialDeleteStmt = dao.prepareStatement("DELETE FROM " + TsKvRollup.TS_KV_ROLLUP_CF +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + TsKvRollup.RESOLUTION_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.TS_COLUMN + EQUALS_PARAM
+                    + "AND " + TsKvRollup.PARTIAL_ID_COLUMN + EQUALS_PARAM);
+        }
+        return rollupPartialDeleteStmt;
+    }
+
+    private PreparedStatement getRollupFetchStmt() {
+        if (rollupFetchStmt == null) {
+            rollupFetchStmt = dao.prepareStatement(SELECT_PREFIX +
+                    ModelConstants.TS_COLUMN + "," +
+                    String.join(",", TsKvRollup.VALUE_COLUMNS) + " " +
+                    "FROM " + TsKvRollup.TS_KV_ROLLUP_CF + " " +
+                    "WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM +
+                    "AND " + TsKvRollup.RESOLUTION_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM +
+                    "AND " + ModelConstants.TS_COLUMN + " > ? " +
+                    "AND " + ModelConstants.TS_COLUMN + " <= ?");
+        }
+        return rollupFetchStmt;
+    }
+
+    private PreparedStatement getRollupDeleteStmt() {
+        if (rollupDeleteStmt == null) {
+            rollupDeleteStmt = dao.prepareStatement("DELETE FROM " + TsKvRollup.TS_KV_ROLLUP_CF +
+                    " WHERE " + ModelConstants.ENTITY_TYPE_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.ENTITY_ID_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.KEY_COLUMN + EQUALS_PARAM
+                    + "AND " + TsKvRollup.RESOLUTION_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.PARTITION_COLUMN + EQUALS_PARAM
+                    + "AND " + ModelConstants.TS_COLUMN + " > ? "
+                    + "AND " + ModelConstants.TS_COLUMN + " < ?");
+        }
+        return rollupDeleteStmt;
+    }
+}
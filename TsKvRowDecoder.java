@@ -0,0 +1,149 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.ColumnDefinitions;
+import com.datastax.driver.core.Row;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import lombok.extern.slf4j.Slf4j;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.BooleanDataEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.StringDataEntry;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+import org.thingsboard.server.dao.model.ModelConstants;
+
+import java.util.function.Function;
+
+/**
+ * Decodes timeseries rows by column index. Indexes are resolved once per {@link ColumnDefinitions}, which the driver
+ * shares between all result sets of a prepared statement, so the per row work is a null check and a primitive read.
+ */
+@Slf4j
+public class TsKvRowDecoder {
+
+    private static final int ABSENT = -1;
+
+    private static final LoadingCache<ColumnDefinitions, TsKvRowDecoder> DECODERS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(CacheLoader.from(TsKvRowDecoder::new));
+
+    private final ColumnDefinitions columns;
+    private final int keyIdx;
+    private final int tsIdx;
+    private final int strIdx;
+    private final int longIdx;
+    private final int doubleIdx;
+    private final int boolIdx;
+
+    private TsKvRowDecoder(ColumnDefinitions columns) {
+        this.columns = columns;
+        this.keyIdx = indexOf(columns, ModelConstants.KEY_COLUMN);
+        this.tsIdx = indexOf(columns, ModelConstants.TS_COLUMN);
+        this.strIdx = indexOf(columns, ModelConstants.STRING_VALUE_COLUMN);
+        this.longIdx = indexOf(columns, ModelConstants.LONG_VALUE_COLUMN);
+        this.doubleIdx = indexOf(columns, ModelConstants.DOUBLE_VALUE_COLUMN);
+        this.boolIdx = indexOf(columns, ModelConstants.BOOLEAN_VALUE_COLUMN);
+    }
+
+    public static TsKvRowDecoder of(Row row) {
+        return DECODERS.getUnchecked(row.getColumnDefinitions());
+    }
+
+    /**
+     * Returns the given decoder if it was resolved for the columns of the row, avoiding the lookup for consecutive rows.
+     */
+    public static TsKvRowDecoder of(Row row, TsKvRowDecoder previous) {
+        if (previous != null && previous.columns == row.getColumnDefinitions()) {
+            return previous;
+        }
+        return of(row);
+    }
+
+    /**
+     * Stateful row converter for sequential consumers, such as a stream reading partition after partition.
+     */
+    public static Function<Row, TsKvEntry> converter() {
+        return new Function<Row, TsKvEntry>() {
+            private TsKvRowDecoder decoder;
+
+            @Override
+            public TsKvEntry apply(Row row) {
+                decoder = of(row, decoder);
+                return decoder.toTsKvEntry(row);
+            }
+        };
+    }
+
+    public String getKey(Row row) {
+        return row.getString(keyIdx);
+    }
+
+    public long getTs(Row row) {
+        return row.getLong(tsIdx);
+    }
+
+    public TsKvEntry toTsKvEntry(Row row) {
+        return toTsKvEntry(row, getKey(row));
+    }
+
+    public TsKvEntry toTsKvEntry(Row row, String key) {
+        return new BasicTsKvEntry(getTs(row), toKvEntry(row, key));
+    }
+
+    public KvEntry toKvEntry(Row row, String key) {
+        if (hasValue(row, strIdx)) {
+            return new StringDataEntry(key, row.getString(strIdx));
+        } else if (hasValue(row, longIdx)) {
+            return new LongDataEntry(key, row.getLong(longIdx));
+        } else if (hasValue(row, doubleIdx)) {
+            return new DoubleDataEntry(key, row.getDouble(doubleIdx));
+        } else if (hasValue(row, boolIdx)) {
+            return new BooleanDataEntry(key, row.getBool(boolIdx));
+        }
+        log.warn("All values in key-value row are nullable ");
+        return null;
+    }
+
+    boolean hasString(Row row) {
+        return hasValue(row, strIdx);
+    }
+
+    boolean hasLong(Row row) {
+        return hasValue(row, longIdx);
+    }
+
+    boolean hasDouble(Row row) {
+        return hasValue(row, doubleIdx);
+    }
+
+    boolean hasBoolean(Row row) {
+        return hasValue(row, boolIdx);
+    }
+
+    String getString(Row row) {
+        return row.getString(strIdx);
+    }
+
+    long getLong(Row row) {
+        return row.getLong(longIdx);
+    }
+
+    double getDouble(Row row) {
+        return row.getDouble(doubleIdx);
+    }
+
+    boolean getBoolean(Row row) {
+        return row.getBool(boolIdx);
+    }
+
+    private static boolean hasValue(Row row, int idx) {
+        return idx != ABSENT && !row.isNull(idx);
+    }
+
+    private static int indexOf(ColumnDefinitions columns, String name) {
+        return columns.contains(name) ? columns.getIndexOf(name) : ABSENT;
+    }
+}
@@ -0,0 +1,167 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.datastax.driver.core.Row;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import org.thingsboard.server.common.data.kv.BasicTsKvEntry;
+import org.thingsboard.server.common.data.kv.DoubleDataEntry;
+import org.thingsboard.server.common.data.kv.KvEntry;
+import org.thingsboard.server.common.data.kv.LongDataEntry;
+import org.thingsboard.server.common.data.kv.ReadTsKvQuery;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sketch based counterpart of {@link TsKvBucketAggregator}: keeps one sketch per aggregation interval of a single key.
+ * Partial aggregators, e.g. one per partition, are combined with {@link #merge(TsKvSketchAggregator)}.
+ */
+public class TsKvSketchAggregator implements TsKvStreamConsumer {
+
+    private static final double RELATIVE_ACCURACY = 0.01;
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final TsSketchAggregation aggregation;
+    private final double quantile;
+    @Getter
+    private final String key;
+    @Getter
+    private final long startTs;
+    @Getter
+    private final long endTs;
+    @Getter
+    private final long step;
+    private final int bucketsCount;
+
+    private final TsQuantileSketch[] quantileSketches;
+    private final TsHyperLogLog[] distinctSketches;
+    private TsKvRowDecoder decoder;
+
+    public TsKvSketchAggregator(ReadTsKvQuery query, long step, TsSketchAggregation aggregation, double quantile) {
+        this(query.getKey(), query.getStartTs(), step, (int) ((query.getEndTs() - query.getStartTs() + step - 1) / step), aggregation, quantile);
+    }
+
+    private TsKvSketchAggregator(String key, long startTs, long step, int bucketsCount, TsSketchAggregation aggregation, double quantile) {
+        this.aggregation = aggregation;
+        this.quantile = quantile;
+        this.key = key;
+        this.startTs = startTs;
+        this.step = step;
+        this.bucketsCount = bucketsCount;
+        this.endTs = startTs + bucketsCount * step;
+        this.quantileSketches = aggregation == TsSketchAggregation.PERCENTILE ? new TsQuantileSketch[bucketsCount] : null;
+        this.distinctSketches = aggregation == TsSketchAggregation.DISTINCT_COUNT ? new TsHyperLogLog[bucketsCount] : null;
+    }
+
+    /**
+     * @return an empty aggregator with the same intervals, to be merged into this one later
+     */
+    public TsKvSketchAggregator newPartial() {
+        return new TsKvSketchAggregator(key, startTs, step, bucketsCount, aggregation, quantile);
+    }
+
+    public void processRow(Row row) {
+        decoder = TsKvRowDecoder.of(row, decoder);
+        long ts = decoder.getTs(row);
+        if (ts > startTs && ts <= endTs) {
+            KvEntry entry = decoder.toKvEntry(row, key);
+            if (entry != null) {
+                add(ts, entry);
+            }
+        }
+    }
+
+    @Override
+    public void add(TsKvEntry entry) {
+        if (entry.getTs() > startTs && entry.getTs() <= endTs) {
+            add(entry.getTs(), entry);
+        }
+    }
+
+    private void add(long ts, KvEntry entry) {
+        int bucket = (int) ((ts - startTs - 1) / step);
+        if (aggregation == TsSketchAggregation.PERCENTILE) {
+            double value = toDouble(entry);
+            if (!Double.isNaN(value)) {
+                if (quantileSketches[bucket] == null) {
+                    quantileSketches[bucket] = new TsQuantileSketch(RELATIVE_ACCURACY);
+                }
+                quantileSketches[bucket].add(value);
+            }
+        } else {
+            if (distinctSketches[bucket] == null) {
+                distinctSketches[bucket] = new TsHyperLogLog();
+            }
+            distinctSketches[bucket].add(hash(entry));
+        }
+    }
+
+    public synchronized void merge(TsKvSketchAggregator partial) {
+        for (int i = 0; i < bucketsCount; i++) {
+            if (quantileSketches != null && partial.quantileSketches[i] != null) {
+                if (quantileSketches[i] == null) {
+                    quantileSketches[i] = partial.quantileSketches[i];
+                } else {
+                    quantileSketches[i].merge(partial.quantileSketches[i]);
+                }
+            } else if (distinctSketches != null && partial.distinctSketches[i] != null) {
+                if (distinctSketches[i] == null) {
+                    distinctSketches[i] = partial.distinctSketches[i];
+                } else {
+                    distinctSketches[i].merge(partial.distinctSketches[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return one entry per non-empty interval, with the ts in the middle of the interval
+     */
+    @Override
+    public synchronized List<TsKvEntry> getData() {
+        List<TsKvEntry> data = new ArrayList<>();
+        for (int i = 0; i < bucketsCount; i++) {
+            long ts = startTs + i * step + step / 2;
+            if (quantileSketches != null && quantileSketches[i] != null) {
+                data.add(new BasicTsKvEntry(ts, new DoubleDataEntry(key, quantileSketches[i].getQuantile(quantile))));
+            } else if (distinctSketches != null && distinctSketches[i] != null) {
+                data.add(new BasicTsKvEntry(ts, new LongDataEntry(key, distinctSketches[i].estimate())));
+            }
+        }
+        return data;
+    }
+
+    private static double toDouble(KvEntry entry) {
+        switch (entry.getDataType()) {
+            case LONG:
+                return entry.getLongValue().map(Long::doubleValue).orElse(Double.NaN);
+            case DOUBLE:
+                return entry.getDoubleValue().orElse(Double.NaN);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    private static long hash(KvEntry entry) {
+        Hasher hasher = HASH_FUNCTION.newHasher().putInt(entry.getDataType().ordinal());
+        switch (entry.getDataType()) {
+            case LONG:
+                hasher.putLong(entry.getLongValue().orElse(0L));
+                break;
+            case DOUBLE:
+                hasher.putDouble(entry.getDoubleValue().orElse(0.0));
+                break;
+            case BOOLEAN:
+                hasher.putBoolean(entry.getBooleanValue().orElse(false));
+                break;
+            default:
+                hasher.putString(entry.getStrValue().orElse(""), StandardCharsets.UTF_8);
+                break;
+        }
+        return hasher.hash().asLong();
+    }
+}
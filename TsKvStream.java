@@ -0,0 +1,64 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Pull-based, asynchronous iterator over timeseries entries.
+ * The next page is only read when it is requested, so consumers control the pace and memory usage of the read.
+ */
+public interface TsKvStream extends AutoCloseable {
+
+    /**
+     * Requests the next page of entries. Must not be called again before the returned future completes.
+     *
+     * @return future of the next non-empty page or of an empty list once the stream is exhausted
+     */
+    ListenableFuture<List<TsKvEntry>> nextPage();
+
+    @Override
+    void close();
+
+    /**
+     * Wraps an already materialized result into a stream with a single page.
+     */
+    static TsKvStream of(ListenableFuture<List<TsKvEntry>> entriesFuture) {
+        return new TsKvStream() {
+            private boolean consumed;
+
+            @Override
+            public ListenableFuture<List<TsKvEntry>> nextPage() {
+                if (consumed) {
+                    return Futures.immediateFuture(Collections.emptyList());
+                }
+                consumed = true;
+                return entriesFuture;
+            }
+
+            @Override
+            public void close() {
+                consumed = true;
+            }
+        };
+    }
+
+    /**
+     * Passes the pages of the stream to the consumer one after another and closes the stream once it is exhausted.
+     */
+    static ListenableFuture<Void> consume(TsKvStream stream, Consumer<List<TsKvEntry>> pageConsumer, Executor executor) {
+        return Futures.transformAsync(stream.nextPage(), page -> {
+            if (page == null || page.isEmpty()) {
+                stream.close();
+                return Futures.immediateFuture(null);
+            }
+            pageConsumer.accept(page);
+            return consume(stream, pageConsumer, executor);
+        }, executor);
+    }
+}
@@ -0,0 +1,35 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Folds the entries of a {@link TsKvStream} into a result, e.g. downsampled points or aggregated intervals.
+ */
+public interface TsKvStreamConsumer {
+
+    void add(TsKvEntry entry);
+
+    /**
+     * @return the result in ascending ts order
+     */
+    List<TsKvEntry> getData();
+
+    /**
+     * Pulls the stream page by page into the consumer and closes it once exhausted.
+     */
+    static ListenableFuture<List<TsKvEntry>> consume(TsKvStream stream, TsKvStreamConsumer consumer, Executor executor) {
+        return Futures.transformAsync(stream.nextPage(), page -> {
+            if (page == null || page.isEmpty()) {
+                stream.close();
+                return Futures.immediateFuture(consumer.getData());
+            }
+            page.forEach(consumer::add);
+            return consume(stream, consumer, executor);
+        }, executor);
+    }
+}
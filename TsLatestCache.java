@@ -0,0 +1,139 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read-through cache of latest values, both per entity and key and per entity for all of its keys.
+ * <p>
+ * Values read from the database may be outdated by a save that completed while the read was in flight. Every save
+ * bumps a per entity generation when it is submitted and when it lands, and values read are only cached if the
+ * generation did not change since the read started.
+ */
+public class TsLatestCache {
+
+    private static final int GENERATION_STRIPES = 4096;
+
+    private final Cache<TsKvEntityKey, TsKvEntry> latestCache;
+    private final Cache<EntityId, Map<String, TsKvEntry>> allLatestCache;
+    private final boolean keepNewest;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    /**
+     * @param keepNewest whether a cached value may only be replaced by a value with the same or a newer ts
+     */
+    public TsLatestCache(long maxSize, long ttlSec, boolean keepNewest) {
+        this.latestCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.allLatestCache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        this.keepNewest = keepNewest;
+    }
+
+    public TsKvEntry get(EntityId entityId, String key) {
+        return latestCache.getIfPresent(new TsKvEntityKey(entityId, key));
+    }
+
+    public List<TsKvEntry> getAll(EntityId entityId) {
+        Map<String, TsKvEntry> entries = allLatestCache.getIfPresent(entityId);
+        return entries != null ? new ArrayList<>(entries.values()) : null;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} and {@link #putAll} for values read from now on
+     */
+    public long getGeneration(EntityId entityId) {
+        return generations.get(toStripe(entityId));
+    }
+
+    /**
+     * Caches a value read with the given generation, keeping an already cached value with a newer ts.
+     */
+    public void put(EntityId entityId, TsKvEntry entry, long generation) {
+        if (getGeneration(entityId) != generation) {
+            return;
+        }
+        latestCache.asMap().merge(new TsKvEntityKey(entityId, entry.getKey()), entry, TsLatestCache::newer);
+    }
+
+    public void putAll(EntityId entityId, List<TsKvEntry> entries, long generation) {
+        if (getGeneration(entityId) != generation) {
+            return;
+        }
+        Map<String, TsKvEntry> map = new ConcurrentHashMap<>();
+        entries.forEach(entry -> map.merge(entry.getKey(), entry, TsLatestCache::newer));
+        allLatestCache.asMap().merge(entityId, map, (prev, loaded) -> {
+            loaded.forEach((key, entry) -> prev.merge(key, entry, TsLatestCache::newer));
+            return prev;
+        });
+    }
+
+    /**
+     * Updates already cached values in place when the value is saved.
+     */
+    public void update(EntityId entityId, TsKvEntry entry) {
+        generations.incrementAndGet(toStripe(entityId));
+        latestCache.asMap().computeIfPresent(new TsKvEntityKey(entityId, entry.getKey()), (k, prev) -> merge(prev, entry));
+        Map<String, TsKvEntry> entries = allLatestCache.getIfPresent(entityId);
+        if (entries != null) {
+            entries.merge(entry.getKey(), entry, this::merge);
+        }
+    }
+
+    /**
+     * Marks a save of the entity as landed in the database, values read before are not cached.
+     */
+    public void onWritten(EntityId entityId) {
+        generations.incrementAndGet(toStripe(entityId));
+    }
+
+    public void invalidate(EntityId entityId, String key) {
+        generations.incrementAndGet(toStripe(entityId));
+        latestCache.invalidate(new TsKvEntityKey(entityId, key));
+        allLatestCache.invalidate(entityId);
+    }
+
+    public long size() {
+        return latestCache.size();
+    }
+
+    public long allLatestSize() {
+        return allLatestCache.size();
+    }
+
+    public CacheStats stats() {
+        return latestCache.stats();
+    }
+
+    public CacheStats allLatestStats() {
+        return allLatestCache.stats();
+    }
+
+    private TsKvEntry merge(TsKvEntry prev, TsKvEntry entry) {
+        return keepNewest ? newer(prev, entry) : entry;
+    }
+
+    private static TsKvEntry newer(TsKvEntry prev, TsKvEntry entry) {
+        return prev.getTs() > entry.getTs() ? prev : entry;
+    }
+
+    private static int toStripe(EntityId entityId) {
+        return (entityId.getId().hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+}
@@ -0,0 +1,134 @@
+package org.thingsboard.server.dao.timeseries;
+
+import lombok.Getter;
+import org.thingsboard.server.common.data.id.EntityId;
+import org.thingsboard.server.common.data.id.TenantId;
+import org.thingsboard.server.common.data.kv.TsKvEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces latest values per entity and key until they are drained by a flush.
+ * A value is only replaced by one with the same or a newer ts. Drained values stay in the buffer while their write
+ * is in flight and go back to pending if it fails. Written values are kept for one more flush interval, so late
+ * out-of-order points arriving shortly after a flush do not overwrite a newer latest value either.
+ */
+public class TsLatestWriteBuffer {
+
+    public enum State {
+        PENDING, FLUSHING, FLUSHED
+    }
+
+    private final ConcurrentMap<TsKvEntityKey, LatestRecord> records = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final int maxSize;
+
+    public TsLatestWriteBuffer(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return false if the buffer is full and the value has to be written directly
+     */
+    public boolean offer(TenantId tenantId, EntityId entityId, TsKvEntry tsKvEntry) {
+        TsKvEntityKey key = new TsKvEntityKey(entityId, tsKvEntry.getKey());
+        if (records.size() >= maxSize && !records.containsKey(key)) {
+            return false;
+        }
+        records.compute(key, (k, prev) -> {
+            if (prev != null && prev.getEntry().getTs() > tsKvEntry.getTs()) {
+                return prev;
+            }
+            if (prev == null || prev.getState() != State.PENDING) {
+                pendingCount.incrementAndGet();
+            }
+            return new LatestRecord(tenantId, entityId, tsKvEntry, State.PENDING);
+        });
+        return true;
+    }
+
+    /**
+     * Drops a buffered value of the key if its ts is within (startTs, endTs].
+     */
+    public void remove(EntityId entityId, String key, long startTs, long endTs) {
+        records.computeIfPresent(new TsKvEntityKey(entityId, key), (k, prev) -> {
+            long ts = prev.getEntry().getTs();
+            if (ts > startTs && ts <= endTs) {
+                if (prev.getState() == State.PENDING) {
+                    pendingCount.decrementAndGet();
+                }
+                return null;
+            }
+            return prev;
+        });
+    }
+
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Marks all pending values as flushing and returns them. Values that were written before the previous drain
+     * are evicted. Every drained value has to be reported with {@link #onFlushed} or {@link #onFlushFailed}.
+     */
+    public List<LatestRecord> drain() {
+        List<LatestRecord> drained = new ArrayList<>();
+        for (Map.Entry<TsKvEntityKey, LatestRecord> entry : records.entrySet()) {
+            LatestRecord record = entry.getValue();
+            if (record.getState() == State.PENDING) {
+                LatestRecord flushing = record.withState(State.FLUSHING);
+                if (records.replace(entry.getKey(), record, flushing)) {
+                    pendingCount.decrementAndGet();
+                    drained.add(flushing);
+                }
+            } else if (record.getState() == State.FLUSHED) {
+                records.remove(entry.getKey(), record);
+            }
+        }
+        return drained;
+    }
+
+    public void onFlushed(LatestRecord record) {
+        records.replace(toKey(record), record, record.withState(State.FLUSHED));
+    }
+
+    /**
+     * Makes a drained value pending again, unless it was replaced by a newer value or removed meanwhile.
+     */
+    public void onFlushFailed(LatestRecord record) {
+        if (records.replace(toKey(record), record, record.withState(State.PENDING))) {
+            pendingCount.incrementAndGet();
+        }
+    }
+
+    private static TsKvEntityKey toKey(LatestRecord record) {
+        return new TsKvEntityKey(record.getEntityId(), record.getEntry().getKey());
+    }
+
+    public static class LatestRecord {
+        @Getter
+        private final TenantId tenantId;
+        @Getter
+        private final EntityId entityId;
+        @Getter
+        private final TsKvEntry entry;
+        @Getter
+        private final State state;
+
+        LatestRecord(TenantId tenantId, EntityId entityId, TsKvEntry entry, State state) {
+            this.tenantId = tenantId;
+            this.entityId = entityId;
+            this.entry = entry;
+            this.state = state;
+        }
+
+        LatestRecord withState(State state) {
+            return new LatestRecord(tenantId, entityId, entry, state);
+        }
+    }
+}
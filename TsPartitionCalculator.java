@@ -0,0 +1,97 @@
+package org.thingsboard.server.dao.timeseries;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+/**
+ * Allocation free partition boundaries in UTC. Fixed length granularities are computed with epoch arithmetic,
+ * month and year boundaries are looked up in tables covering {@link #TABLE_START_YEAR} to {@link #TABLE_END_YEAR}.
+ * Timestamps outside of the tables fall back to {@link TsPartitionDate#truncatedTo}, which yields the same boundaries.
+ */
+public final class TsPartitionCalculator {
+
+    static final int TABLE_START_YEAR = 1970;
+    static final int TABLE_END_YEAR = 2200;
+
+    private static final long MINUTE_MS = 60_000L;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    private static final long[] MONTH_STARTS = new long[(TABLE_END_YEAR - TABLE_START_YEAR) * 12 + 1];
+    private static final long[] YEAR_STARTS = new long[TABLE_END_YEAR - TABLE_START_YEAR + 1];
+
+    static {
+        LocalDateTime month = LocalDateTime.of(TABLE_START_YEAR, 1, 1, 0, 0);
+        for (int i = 0; i < MONTH_STARTS.length; i++) {
+            MONTH_STARTS[i] = month.toInstant(ZoneOffset.UTC).toEpochMilli();
+            if (i % 12 == 0) {
+                YEAR_STARTS[i / 12] = MONTH_STARTS[i];
+            }
+            month = month.plusMonths(1);
+        }
+    }
+
+    private TsPartitionCalculator() {
+    }
+
+    /**
+     * @return the start of the partition containing <code>ts</code>
+     */
+    public static long truncate(TsPartitionDate partitioning, long ts) {
+        switch (partitioning) {
+            case MINUTES:
+                return ts - Math.floorMod(ts, MINUTE_MS);
+            case HOURS:
+                return ts - Math.floorMod(ts, HOUR_MS);
+            case DAYS:
+                return ts - Math.floorMod(ts, DAY_MS);
+            case MONTHS:
+                return floor(MONTH_STARTS, partitioning, ts);
+            case YEARS:
+                return floor(YEAR_STARTS, partitioning, ts);
+            default:
+                return 0L;
+        }
+    }
+
+    /**
+     * @return the start of the partition following the one that starts at <code>partitionTs</code>,
+     * {@link Long#MAX_VALUE} if there is none
+     */
+    public static long next(TsPartitionDate partitioning, long partitionTs) {
+        switch (partitioning) {
+            case MINUTES:
+                return partitionTs + MINUTE_MS;
+            case HOURS:
+                return partitionTs + HOUR_MS;
+            case DAYS:
+                return partitionTs + DAY_MS;
+            case MONTHS:
+                return higher(MONTH_STARTS, partitioning, partitionTs);
+            case YEARS:
+                return higher(YEAR_STARTS, partitioning, partitionTs);
+            default:
+                return Long.MAX_VALUE;
+        }
+    }
+
+    private static long floor(long[] boundaries, TsPartitionDate partitioning, long ts) {
+        if (ts < boundaries[0] || ts >= boundaries[boundaries.length - 1]) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(ts), ZoneOffset.UTC);
+            return partitioning.truncatedTo(time).toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        int idx = Arrays.binarySearch(boundaries, ts);
+        return idx >= 0 ? boundaries[idx] : boundaries[-idx - 2];
+    }
+
+    private static long higher(long[] boundaries, TsPartitionDate partitioning, long partitionTs) {
+        if (partitionTs < boundaries[0] || partitionTs >= boundaries[boundaries.length - 1]) {
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(partitionTs), ZoneOffset.UTC);
+            return partitioning.truncatedTo(time).plus(1, partitioning.getTruncateUnit()).toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        int idx = Arrays.binarySearch(boundaries, partitionTs);
+        return idx >= 0 ? boundaries[idx + 1] : boundaries[-idx - 1];
+    }
+}
@@ -0,0 +1,82 @@
+package org.thingsboard.server.dao.timeseries;
+
+import org.thingsboard.server.common.data.id.EntityId;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lossy, lock-free set of recently written partitions.
+ * Each (entity, key, partition) maps to a single slot, colliding records simply replace each other,
+ * so a lookup may miss (and cause a redundant insert) but never reports a partition that was not recorded.
+ */
+public class TsPartitionWriteFilter {
+
+    private final AtomicReferenceArray<Record> slots;
+    private final int mask;
+    private final long refreshMs;
+
+    public TsPartitionWriteFilter(int size, long refreshMs) {
+        int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.refreshMs = refreshMs;
+    }
+
+    public long getRefreshMs() {
+        return refreshMs;
+    }
+
+    /**
+     * @return true if the partition was not recorded within the refresh interval and has to be written now
+     */
+    public boolean record(EntityId entityId, String key, long partition, long now) {
+        int slot = slot(entityId, key, partition);
+        Record record = null;
+        while (true) {
+            Record current = slots.get(slot);
+            if (current != null && current.matches(entityId, key, partition) && current.expirationTs > now) {
+                return false;
+            }
+            if (record == null) {
+                record = new Record(entityId, key, partition, now + refreshMs);
+            }
+            if (slots.compareAndSet(slot, current, record)) {
+                return true;
+            }
+        }
+    }
+
+    public void forget(EntityId entityId, String key, long partition) {
+        int slot = slot(entityId, key, partition);
+        Record current = slots.get(slot);
+        if (current != null && current.matches(entityId, key, partition)) {
+            slots.compareAndSet(slot, current, null);
+        }
+    }
+
+    private int slot(EntityId entityId, String key, long partition) {
+        int h = entityId.getId().hashCode();
+        h = 31 * h + key.hashCode();
+        h = 31 * h + Long.hashCode(partition);
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    private static class Record {
+        private final EntityId entityId;
+        private final String key;
+        private final long partition;
+        private final long expirationTs;
+
+        Record(EntityId entityId, String key, long partition, long expirationTs) {
+            this.entityId = entityId;
+            this.key = key;
+            this.partition = partition;
+            this.expirationTs = expirationTs;
+        }
+
+        boolean matches(EntityId entityId, String key, long partition) {
+            return this.partition == partition && this.entityId.equals(entityId) && this.key.equals(key);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.Getter;
+import org.thingsboard.server.common.data.id.EntityId;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds the configured partition granularity per key and caches the partitioning schedules of timeseries.
+ * Schedules expire after <code>ttlSec</code>, so a change scheduled by another node is seen by this node
+ * within that time. Changes are therefore scheduled at least twice the ttl ahead.
+ * <p>
+ * The cache holds the futures of the schedules, so concurrent callers share a single load that never blocks them.
+ * Failed loads are dropped and retried by the next caller.
+ */
+public class TsPartitioningCache {
+
+    private final Cache<TsKvEntityKey, ListenableFuture<TsPartitioningSchedule>> cache;
+    private final Map<String, TsPartitionDate> keyPartitionings;
+    @Getter
+    private final TsPartitionDate defaultPartitioning;
+    @Getter
+    private final long ttlMs;
+
+    public TsPartitioningCache(TsPartitionDate defaultPartitioning, Map<String, TsPartitionDate> keyPartitionings, long maxSize, long ttlSec) {
+        this.defaultPartitioning = defaultPartitioning;
+        this.keyPartitionings = keyPartitionings;
+        this.ttlMs = TimeUnit.SECONDS.toMillis(ttlSec);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param config comma separated <code>key:PARTITIONING</code> pairs, e.g. <code>vibration:HOURS,battery:YEARS</code>
+     */
+    public static Map<String, TsPartitionDate> parseKeyPartitionings(String config) {
+        if (config == null || config.trim().isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, TsPartitionDate> result = new HashMap<>();
+        for (String pair : config.split(",")) {
+            int idx = pair.lastIndexOf(':');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Invalid key partitioning: " + pair);
+            }
+            result.put(pair.substring(0, idx).trim(), TsPartitionDate.valueOf(pair.substring(idx + 1).trim().toUpperCase()));
+        }
+        return result;
+    }
+
+    /**
+     * @return the granularity new partitions of the key should use
+     */
+    public TsPartitionDate getTargetPartitioning(String key) {
+        return keyPartitionings.getOrDefault(key, defaultPartitioning);
+    }
+
+    /**
+     * @param loader starts loading the schedule, called only if no load of the schedule is cached
+     */
+    public ListenableFuture<TsPartitioningSchedule> get(EntityId entityId, String key, Supplier<ListenableFuture<TsPartitioningSchedule>> loader) {
+        TsKvEntityKey cacheKey = new TsKvEntityKey(entityId, key);
+        ListenableFuture<TsPartitioningSchedule> schedule = cache.getIfPresent(cacheKey);
+        if (schedule != null) {
+            return schedule;
+        }
+        try {
+            schedule = cache.get(cacheKey, loader::get);
+        } catch (ExecutionException e) {
+            return Futures.immediateFailedFuture(e.getCause());
+        }
+        evictOnFailure(cacheKey, schedule);
+        return schedule;
+    }
+
+    public void put(EntityId entityId, String key, ListenableFuture<TsPartitioningSchedule> schedule) {
+        TsKvEntityKey cacheKey = new TsKvEntityKey(entityId, key);
+        cache.put(cacheKey, schedule);
+        evictOnFailure(cacheKey, schedule);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    private void evictOnFailure(TsKvEntityKey cacheKey, ListenableFuture<TsPartitioningSchedule> schedule) {
+        Futures.catching(schedule, Throwable.class, t -> {
+            cache.asMap().remove(cacheKey, schedule);
+            return null;
+        }, MoreExecutors.directExecutor());
+    }
+}
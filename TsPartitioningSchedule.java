@@ -0,0 +1,110 @@
+package org.thingsboard.server.dao.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Partition granularity of a single timeseries over time. The default granularity applies until the first change,
+ * every change applies from its <code>since</code> ts on. Changes are recorded in:
+ * <pre>
+ * CREATE TABLE IF NOT EXISTS ts_kv_partitioning_cf (
+ *     entity_type text, entity_id timeuuid, key text, since_ts bigint, partitioning text,
+ *     PRIMARY KEY (( entity_type, entity_id, key ), since_ts)
+ * );
+ * </pre>
+ * A change is always scheduled at a partition boundary of the granularity it replaces, and the partitions after it
+ * never start before it, so the partition of a ts is monotonic in the ts and existing partitions never move.
+ */
+public class TsPartitioningSchedule {
+
+    public static final String TS_KV_PARTITIONING_CF = "ts_kv_partitioning_cf";
+    public static final String SINCE_TS_COLUMN = "since_ts";
+    public static final String PARTITIONING_COLUMN = "partitioning";
+
+    private final TsPartitionDate defaultPartitioning;
+    private final NavigableMap<Long, TsPartitionDate> changes;
+
+    private TsPartitioningSchedule(TsPartitionDate defaultPartitioning, NavigableMap<Long, TsPartitionDate> changes) {
+        this.defaultPartitioning = defaultPartitioning;
+        this.changes = changes;
+    }
+
+    public static TsPartitioningSchedule of(TsPartitionDate defaultPartitioning) {
+        return new TsPartitioningSchedule(defaultPartitioning, new TreeMap<>());
+    }
+
+    /**
+     * Changes to the granularity that already applies are ignored, so concurrent schedulings of the same change
+     * by several nodes resolve to the earliest one.
+     */
+    public static TsPartitioningSchedule of(TsPartitionDate defaultPartitioning, Map<Long, TsPartitionDate> changes) {
+        NavigableMap<Long, TsPartitionDate> effective = new TreeMap<>();
+        TsPartitionDate current = defaultPartitioning;
+        for (Map.Entry<Long, TsPartitionDate> change : new TreeMap<>(changes).entrySet()) {
+            if (change.getValue() != current) {
+                effective.put(change.getKey(), change.getValue());
+                current = change.getValue();
+            }
+        }
+        return new TsPartitioningSchedule(defaultPartitioning, effective);
+    }
+
+    public TsPartitionDate getPartitioning(long ts) {
+        Map.Entry<Long, TsPartitionDate> change = changes.floorEntry(ts);
+        return change != null ? change.getValue() : defaultPartitioning;
+    }
+
+    public TsPartitionDate getLatestPartitioning() {
+        return changes.isEmpty() ? defaultPartitioning : changes.lastEntry().getValue();
+    }
+
+    public long toPartitionTs(long ts) {
+        Map.Entry<Long, TsPartitionDate> change = changes.floorEntry(ts);
+        if (change == null) {
+            return TsPartitionCalculator.truncate(defaultPartitioning, ts);
+        }
+        return Math.max(change.getKey(), TsPartitionCalculator.truncate(change.getValue(), ts));
+    }
+
+    public long toNextPartitionTs(long partitionTs) {
+        TsPartitionDate partitioning = getPartitioning(partitionTs);
+        long next = TsPartitionCalculator.next(partitioning, TsPartitionCalculator.truncate(partitioning, partitionTs));
+        Long nextChange = changes.higherKey(partitionTs);
+        return nextChange != null ? Math.min(next, nextChange) : next;
+    }
+
+    /**
+     * @return the ts from which on a new granularity can replace the current one, the first partition boundary
+     * at or after <code>notBeforeTs</code>
+     */
+    public long getChangeTs(long notBeforeTs) {
+        long partition = toPartitionTs(notBeforeTs);
+        return partition == notBeforeTs ? partition : toNextPartitionTs(partition);
+    }
+
+    /**
+     * Enumerates the partitions covering <code>[startTs, endTs]</code> without asking the database, whether points
+     * were written to them or not.
+     *
+     * @return the partitions in ascending order or null if there are more than <code>maxPartitions</code>
+     */
+    public List<Long> partitionsBetween(long startTs, long endTs, int maxPartitions) {
+        List<Long> partitions = new ArrayList<>();
+        long partition = toPartitionTs(startTs);
+        long last = toPartitionTs(endTs);
+        while (partition <= last) {
+            if (partitions.size() >= maxPartitions) {
+                return null;
+            }
+            partitions.add(partition);
+            if (partition == last) {
+                break;
+            }
+            partition = toNextPartitionTs(partition);
+        }
+        return partitions;
+    }
+}
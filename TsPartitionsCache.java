@@ -0,0 +1,64 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.thingsboard.server.common.data.id.EntityId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the complete, sorted set of known partitions per entity and key.
+ * Entries are only created from a full read of the partitions table and are then kept up to date by local writes.
+ */
+public class TsPartitionsCache {
+
+    private final Cache<TsKvEntityKey, NavigableSet<Long>> cache;
+
+    public TsPartitionsCache(long maxSize, long ttlSec) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return ascending partitions between minPartition and maxPartition (inclusive) or null if the key is not cached
+     */
+    public List<Long> get(EntityId entityId, String key, long minPartition, long maxPartition) {
+        NavigableSet<Long> partitions = cache.getIfPresent(new TsKvEntityKey(entityId, key));
+        if (partitions == null) {
+            return null;
+        }
+        return new ArrayList<>(partitions.subSet(minPartition, true, maxPartition, true));
+    }
+
+    public void put(EntityId entityId, String key, Collection<Long> partitions) {
+        cache.put(new TsKvEntityKey(entityId, key), new ConcurrentSkipListSet<>(partitions));
+    }
+
+    public void add(EntityId entityId, String key, long partition) {
+        NavigableSet<Long> partitions = cache.getIfPresent(new TsKvEntityKey(entityId, key));
+        if (partitions != null) {
+            partitions.add(partition);
+        }
+    }
+
+    public void invalidate(EntityId entityId, String key) {
+        cache.invalidate(new TsKvEntityKey(entityId, key));
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
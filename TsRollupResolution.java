@@ -0,0 +1,69 @@
+package org.thingsboard.server.dao.timeseries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resolutions of pre-aggregated timeseries rollups. A rollup bucket with end ts <code>b</code>
+ * covers <code>(b - duration, b]</code>, matching the intervals of aggregated queries.
+ * Rollup partitions use fixed-length periods, so they can be enumerated without a partitions table.
+ */
+public enum TsRollupResolution {
+
+    MINUTE(60 * 1000L, 24 * 60 * 60 * 1000L),
+    HOUR(60 * 60 * 1000L, 30 * 24 * 60 * 60 * 1000L),
+    DAY(24 * 60 * 60 * 1000L, 365 * 24 * 60 * 60 * 1000L);
+
+    private final long duration;
+    private final long partitionDuration;
+
+    TsRollupResolution(long duration, long partitionDuration) {
+        this.duration = duration;
+        this.partitionDuration = partitionDuration;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long toBucketEndTs(long ts) {
+        return (Math.floorDiv(ts - 1, duration) + 1) * duration;
+    }
+
+    public long alignDown(long ts) {
+        return Math.floorDiv(ts, duration) * duration;
+    }
+
+    public long alignUp(long ts) {
+        return -Math.floorDiv(-ts, duration) * duration;
+    }
+
+    public long toPartitionTs(long bucketEndTs) {
+        return Math.floorDiv(bucketEndTs, partitionDuration) * partitionDuration;
+    }
+
+    /**
+     * @return ascending partitions holding buckets with end ts in (startTs, endTs]
+     */
+    public List<Long> partitionsBetween(long startTs, long endTs) {
+        List<Long> partitions = new ArrayList<>();
+        for (long partition = toPartitionTs(startTs + 1); partition <= endTs; partition += partitionDuration) {
+            partitions.add(partition);
+        }
+        return partitions;
+    }
+
+    /**
+     * @return the coarsest resolution that tiles the intervals of a query with the given start and step, or null
+     */
+    public static TsRollupResolution forInterval(long startTs, long step) {
+        TsRollupResolution[] values = values();
+        for (int i = values.length - 1; i >= 0; i--) {
+            TsRollupResolution resolution = values[i];
+            if (step % resolution.duration == 0 && startTs % resolution.duration == 0) {
+                return resolution;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package org.thingsboard.server.dao.timeseries;
+
+/**
+ * Aggregations computed with mergeable sketches, so partial results of partitions can be combined.
+ */
+public enum TsSketchAggregation {
+
+    /**
+     * Approximate quantile of the numeric values, with a bounded relative error.
+     */
+    PERCENTILE,
+    /**
+     * Approximate number of distinct values, of any type.
+     */
+    DISTINCT_COUNT;
+
+}
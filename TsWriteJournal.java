@@ -0,0 +1,337 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of memory-mapped segment files on local disk.
+ * <p>
+ * Every record is stored as <code>[length][crc][payload]</code>, the crc also covering the segment id, so a torn
+ * write at the end of a segment or stale content of a recycled segment file is detected and ends the segment.
+ * Records are polled in append order and acknowledged once they are durable elsewhere. The position below which
+ * all records are acknowledged is persisted in a checkpoint file, so after a crash only records from the
+ * checkpoint on are replayed (at least once). Segments before the checkpoint are kept as spare files for reuse.
+ * <p>
+ * Appends are group committed: the future of an appended record completes once a later {@link #force()}, or the
+ * roll to the next segment, has forced the record to disk, so one force covers all records appended since the last.
+ * <p>
+ * A position is the segment id in the upper and the offset within the segment in the lower 32 bits.
+ */
+@Slf4j
+public class TsWriteJournal implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String SPARE_SUFFIX = ".spare";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String DEAD_LETTER_FILE = "dead-letter";
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_SPARE_SEGMENTS = 2;
+
+    private final File dir;
+    private final int segmentSize;
+    private final int maxSegments;
+
+    private final TreeMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final Deque<File> spareFiles = new ArrayDeque<>();
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    private final Object deadLetterLock = new Object();
+    private List<SettableFuture<Void>> unforced = new ArrayList<>();
+    private MappedByteBuffer activeSegment;
+    private long activeSegmentId;
+    private long readPosition;
+    private long checkpoint;
+
+    public TsWriteJournal(File dir, int segmentSize, long maxSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxSegments = (int) Math.max(2, maxSize / segmentSize);
+        recover();
+    }
+
+    /**
+     * @return the future completed once the record is forced to disk, or null if the journal is full or the record
+     * does not fit into a segment
+     */
+    public synchronized ListenableFuture<Void> append(byte[] payload) {
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if (size > segmentSize) {
+            return null;
+        }
+        try {
+            if (activeSegment == null || activeSegment.remaining() < size) {
+                if (!rollSegment()) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to create journal segment in {}", dir, e);
+            return null;
+        }
+        activeSegment.putInt(payload.length);
+        activeSegment.putInt(crc(activeSegmentId, payload));
+        activeSegment.put(payload);
+        SettableFuture<Void> future = SettableFuture.create();
+        unforced.add(future);
+        return future;
+    }
+
+    /**
+     * Forces the active segment to disk and completes the futures of the records appended before.
+     */
+    public synchronized void force() {
+        if (unforced.isEmpty()) {
+            return;
+        }
+        try {
+            activeSegment.force();
+            completeUnforced(null);
+        } catch (RuntimeException e) {
+            log.error("Failed to force journal segment {} in {}", activeSegmentId, dir, e);
+            completeUnforced(e);
+        }
+    }
+
+    /**
+     * @return the next record that was not polled yet or null if there is none
+     */
+    public synchronized JournalEntry poll() {
+        while (true) {
+            long segmentId = segmentOf(readPosition);
+            int offset = offsetOf(readPosition);
+            MappedByteBuffer segment = segments.get(segmentId);
+            if (segment == null) {
+                Long next = segments.higherKey(segmentId);
+                if (next == null) {
+                    return null;
+                }
+                readPosition = toPosition(next, 0);
+                continue;
+            }
+            boolean active = segment == activeSegment;
+            int limit = active ? activeSegment.position() : segment.capacity();
+            if (offset + RECORD_HEADER_SIZE <= limit) {
+                int length = segment.getInt(offset);
+                if (length > 0 && offset + RECORD_HEADER_SIZE + length <= limit) {
+                    byte[] payload = new byte[length];
+                    ByteBuffer view = segment.duplicate();
+                    view.position(offset + RECORD_HEADER_SIZE);
+                    view.get(payload);
+                    if (segment.getInt(offset + 4) == crc(segmentId, payload)) {
+                        long position = readPosition;
+                        readPosition = toPosition(segmentId, offset + RECORD_HEADER_SIZE + length);
+                        pending.add(position);
+                        return new JournalEntry(position, payload);
+                    }
+                }
+            }
+            if (active) {
+                return null;
+            }
+            Long next = segments.higherKey(segmentId);
+            if (next == null) {
+                return null;
+            }
+            readPosition = toPosition(next, 0);
+        }
+    }
+
+    public void acknowledge(long position) {
+        pending.remove(position);
+    }
+
+    /**
+     * Copies a record that cannot be written to the dead letter file as <code>[length][payload]</code> and
+     * acknowledges it, so it no longer holds back the checkpoint.
+     */
+    public void deadLetter(JournalEntry entry) {
+        synchronized (deadLetterLock) {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(new File(dir, DEAD_LETTER_FILE), true))) {
+                out.writeInt(entry.getPayload().length);
+                out.write(entry.getPayload());
+            } catch (IOException e) {
+                log.error("Failed to write journal record at {} to the dead letter file in {}", entry.getPosition(), dir, e);
+            }
+        }
+        acknowledge(entry.getPosition());
+    }
+
+    /**
+     * Forces the active segment to disk, persists the checkpoint and recycles the segments before it.
+     */
+    public synchronized void flush() throws IOException {
+        force();
+        long newCheckpoint = pending.isEmpty() ? readPosition : Math.min(pending.first(), readPosition);
+        if (newCheckpoint != checkpoint) {
+            try (RandomAccessFile file = new RandomAccessFile(new File(dir, CHECKPOINT_FILE), "rw")) {
+                file.writeLong(newCheckpoint);
+                file.writeLong(~newCheckpoint);
+                file.getFD().sync();
+            }
+            checkpoint = newCheckpoint;
+        }
+        Map.Entry<Long, MappedByteBuffer> first;
+        while ((first = segments.firstEntry()) != null && first.getKey() < segmentOf(checkpoint) && first.getValue() != activeSegment) {
+            segments.remove(first.getKey());
+            recycle(segmentFile(first.getKey()));
+        }
+    }
+
+    public synchronized int getSegmentsCount() {
+        return segments.size();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void recover() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create journal directory " + dir);
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(SEGMENT_SUFFIX)) {
+                    long segmentId = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                    segments.put(segmentId, map(file));
+                } else if (name.endsWith(SPARE_SUFFIX)) {
+                    spareFiles.add(file);
+                }
+            }
+        }
+        File checkpointFile = new File(dir, CHECKPOINT_FILE);
+        if (checkpointFile.length() >= 16) {
+            try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "r")) {
+                long position = file.readLong();
+                if (file.readLong() == ~position) {
+                    checkpoint = position;
+                } else {
+                    log.warn("Corrupted journal checkpoint in {}, replaying all segments", dir);
+                }
+            }
+        }
+        if (checkpoint == 0 && !segments.isEmpty()) {
+            checkpoint = toPosition(segments.firstKey(), 0);
+        }
+        readPosition = checkpoint;
+        activeSegmentId = Math.max(segments.isEmpty() ? -1 : segments.lastKey(), segmentOf(checkpoint));
+        log.info("Opened journal {} with {} segments, replaying from segment {} offset {}",
+                dir, segments.size(), segmentOf(checkpoint), offsetOf(checkpoint));
+    }
+
+    /**
+     * New records always go to a new segment, so the segments of a previous run are never appended to.
+     */
+    private boolean rollSegment() throws IOException {
+        if (segments.size() >= maxSegments) {
+            return false;
+        }
+        if (activeSegment != null) {
+            activeSegment.force();
+            completeUnforced(null);
+        }
+        long segmentId = activeSegmentId + 1;
+        File file = segmentFile(segmentId);
+        File spare = spareFiles.poll();
+        if (spare == null || spare.length() != segmentSize || !spare.renameTo(file)) {
+            if (spare != null && spare.exists() && !spare.delete()) {
+                log.warn("Failed to delete journal segment {}", spare);
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(segmentSize);
+            }
+        }
+        activeSegment = map(file);
+        activeSegmentId = segmentId;
+        segments.put(segmentId, activeSegment);
+        return true;
+    }
+
+    private void completeUnforced(Throwable error) {
+        List<SettableFuture<Void>> futures = unforced;
+        unforced = new ArrayList<>();
+        for (SettableFuture<Void> future : futures) {
+            if (error == null) {
+                future.set(null);
+            } else {
+                future.setException(error);
+            }
+        }
+    }
+
+    private void recycle(File file) {
+        if (spareFiles.size() < MAX_SPARE_SEGMENTS) {
+            File spare = new File(dir, file.getName().replace(SEGMENT_SUFFIX, SPARE_SUFFIX));
+            if (file.renameTo(spare)) {
+                spareFiles.add(spare);
+                return;
+            }
+        }
+        if (!file.delete()) {
+            log.warn("Failed to delete journal segment {}", file);
+        }
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(dir, String.format("%020d", segmentId) + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+    }
+
+    private static int crc(long segmentId, byte[] payload) {
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < 8; i++) {
+            crc.update((int) (segmentId >>> (8 * i)));
+        }
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static long toPosition(long segmentId, int offset) {
+        return (segmentId << 32) | offset;
+    }
+
+    private static long segmentOf(long position) {
+        return position >>> 32;
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    @Data
+    public static class JournalEntry {
+        private final long position;
+        private final byte[] payload;
+    }
+}
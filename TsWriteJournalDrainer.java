@@ -0,0 +1,144 @@
+package org.thingsboard.server.dao.timeseries;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Appends writes to a {@link TsWriteJournal} and replays them in the background. Created by
+ * {@link CassandraBaseTimeseriesDao} if the journal is enabled, the DAO executes the replayed records.
+ */
+@Slf4j
+public class TsWriteJournalDrainer {
+
+    private final TsWriteJournal journal;
+    private final Function<TsJournalRecord, ListenableFuture<Void>> writer;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final long retryDelayMs;
+    private final int maxRetries;
+
+    private final ScheduledExecutorService journalExecutor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    public TsWriteJournalDrainer(TsWriteJournal journal, Function<TsJournalRecord, ListenableFuture<Void>> writer, Executor executor,
+                                 int maxInFlight, long pollIntervalMs, long groupCommitIntervalMs, long flushIntervalMs,
+                                 long retryDelayMs, int maxRetries) {
+        this.journal = journal;
+        this.writer = writer;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.retryDelayMs = retryDelayMs;
+        this.maxRetries = maxRetries;
+        journalExecutor = Executors.newSingleThreadScheduledExecutor();
+        journalExecutor.scheduleWithFixedDelay(this::drain, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        journalExecutor.scheduleWithFixedDelay(journal::force, groupCommitIntervalMs, groupCommitIntervalMs, TimeUnit.MILLISECONDS);
+        journalExecutor.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        journalExecutor.shutdownNow();
+        // records that are not acknowledged yet are replayed on the next start
+        flush();
+    }
+
+    /**
+     * The returned future completes once the record is forced to disk, within
+     * <code>cassandra.query.ts_journal.group_commit_interval_ms</code>, so an acknowledged write survives a crash.
+     *
+     * @return null if the journal is full and the write has to be executed directly
+     */
+    public ListenableFuture<Void> append(TsJournalRecord record) {
+        ListenableFuture<Void> forced = journal.append(record.toBytes());
+        if (forced == null) {
+            log.debug("[{}][{}] Journal is full, writing key {} directly", record.getEntityId().getEntityType(), record.getEntityId().getId(), record.getKey());
+            return null;
+        }
+        scheduleDrain();
+        // callers' listeners must not run on the journal thread that forces the segment
+        return Futures.transform(forced, result -> result, executor);
+    }
+
+    private void scheduleDrain() {
+        if (inFlight.get() < maxInFlight && !journalExecutor.isShutdown() && drainScheduled.compareAndSet(false, true)) {
+            journalExecutor.submit(this::drain);
+        }
+    }
+
+    /**
+     * Replays journal records with at most <code>cassandra.query.ts_journal.max_in_flight</code> writes in flight.
+     * A failed write, e.g. rejected by the buffered rate executor, keeps its slot and is retried after a delay,
+     * so the journal is drained no faster than Cassandra accepts writes. After
+     * <code>cassandra.query.ts_journal.max_retries</code> retries the record is moved to the dead letter file.
+     */
+    private void drain() {
+        drainScheduled.set(false);
+        try {
+            while (inFlight.get() < maxInFlight) {
+                TsWriteJournal.JournalEntry entry = journal.poll();
+                if (entry == null) {
+                    return;
+                }
+                TsJournalRecord record;
+                try {
+                    record = TsJournalRecord.fromBytes(entry.getPayload());
+                } catch (Exception e) {
+                    log.error("Skipping unreadable journal record at {}", entry.getPosition(), e);
+                    journal.acknowledge(entry.getPosition());
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                replay(entry, record, 1);
+            }
+        } catch (Throwable t) {
+            log.error("Failed to drain timeseries journal", t);
+        }
+    }
+
+    private void replay(TsWriteJournal.JournalEntry entry, TsJournalRecord record, int attempt) {
+        Futures.addCallback(writer.apply(record), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(@Nullable Void result) {
+                journal.acknowledge(entry.getPosition());
+                inFlight.decrementAndGet();
+                scheduleDrain();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                if (attempt > maxRetries) {
+                    log.error("[{}][{}] Failed to replay journal record of key {} after {} attempts, moving it to the dead letter file",
+                            record.getEntityId().getEntityType(), record.getEntityId().getId(), record.getKey(), attempt, t);
+                    journal.deadLetter(entry);
+                    inFlight.decrementAndGet();
+                    scheduleDrain();
+                    return;
+                }
+                log.warn("[{}][{}] Failed to replay journal record of key {}, attempt {}, retrying",
+                        record.getEntityId().getEntityType(), record.getEntityId().getId(), record.getKey(), attempt, t);
+                if (!journalExecutor.isShutdown()) {
+                    journalExecutor.schedule(() -> replay(entry, record, attempt + 1), retryDelayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }, executor);
+    }
+
+    private void flush() {
+        try {
+            journal.flush();
+        } catch (Exception e) {
+            log.error("Failed to flush timeseries journal", e);
+        }
+    }
+}